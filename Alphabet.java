@@ -1,31 +1,54 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Brian Chiang
  */
 class Alphabet {
 
+    /** Index returned by toInt for a character not in the alphabet. */
+    static final int NOT_FOUND = -1;
+
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        char[] notAlpha = new char[] {'*', ')', '('};
         _alphabet = chars.toCharArray();
         _size = chars.length();
+        char max = 0;
+        for (char b : _alphabet) {
+            if (b == '*' || b == ')' || b == '(') {
+                throw new EnigmaException(b + " is illegal");
+            }
+            if (Character.isWhitespace(b)) {
+                throw new EnigmaException("No whitespaces in ALPHA");
+            }
+            max = (char) Math.max(max, b);
+        }
+        if (max < DIRECT_LIMIT) {
+            _direct = new int[max + 1];
+            Arrays.fill(_direct, NOT_FOUND);
+        } else {
+            int capacity = Integer.highestOneBit(Math.max(1, _size)) << 2;
+            _keys = new char[capacity];
+            _slots = new int[capacity];
+            Arrays.fill(_slots, NOT_FOUND);
+        }
         for (int i = 0; i < _size; i++) {
-            for (int j = 0; j < _size; j++) {
-                char b = _alphabet[i];
-                for (char c : notAlpha) {
-                    if (b == c) {
-                        throw new EnigmaException(b + " is illegal");
-                    }
-                }
-                if (Character.isWhitespace(b)) {
-                    throw new EnigmaException("No whitespaces in ALPHA");
-                }
-                if (i != j && b == _alphabet[j]) {
-                    throw new EnigmaException("Char " + b + " duplicated");
+            char b = _alphabet[i];
+            if (toInt(b) != NOT_FOUND) {
+                throw new EnigmaException("Char " + b + " duplicated");
+            }
+            if (_direct != null) {
+                _direct[b] = i;
+            } else {
+                int h = hash(b);
+                while (_slots[h] != NOT_FOUND) {
+                    h = (h + 1) & (_slots.length - 1);
                 }
+                _keys[h] = b;
+                _slots[h] = i;
             }
         }
     }
@@ -42,12 +65,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < _size; i++) {
-            if (_alphabet[i] == ch) {
-                return true;
-            }
-        }
-        return false;
+        return toInt(ch) != NOT_FOUND;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -56,20 +74,45 @@ class Alphabet {
         return _alphabet[index];
     }
 
-    /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+    /** Returns the index of character CH, or NOT_FOUND if CH is not
+     *  in the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int i = 0; i < _size; i++) {
-            if (_alphabet[i] == ch) {
-                return i;
+        if (_direct != null) {
+            return ch < _direct.length ? _direct[ch] : NOT_FOUND;
+        }
+        int h = hash(ch);
+        while (_slots[h] != NOT_FOUND) {
+            if (_keys[h] == ch) {
+                return _slots[h];
             }
+            h = (h + 1) & (_slots.length - 1);
         }
-        return 0;
+        return NOT_FOUND;
+    }
+
+    /** Returns the home slot of CH in the sparse table. */
+    private int hash(char ch) {
+        return (ch * 0x9E3779B1 >>> 16) & (_slots.length - 1);
     }
 
+    /** Alphabets whose largest character is below this limit are
+     *  indexed by a table with one entry per character value. */
+    private static final int DIRECT_LIMIT = 1 << 12;
+
     /** Characters in this alphabet. */
     private char[] _alphabet;
 
     /** Size of this alphabet. */
     private int _size;
+
+    /** Index of each character value, or NOT_FOUND; null if the
+     *  alphabet uses the sparse table. */
+    private int[] _direct;
+
+    /** Characters of the sparse open-addressed table. */
+    private char[] _keys;
+
+    /** Indices of the characters in _keys, or NOT_FOUND for an
+     *  empty slot. */
+    private int[] _slots;
 }
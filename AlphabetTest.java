@@ -0,0 +1,56 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Brian Chiang
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkUpper() {
+        for (int i = 0; i < UPPER_STRING.length(); i++) {
+            char c = UPPER_STRING.charAt(i);
+            assertTrue(UPPER.contains(c));
+            assertEquals(i, UPPER.toInt(c));
+            assertEquals(c, UPPER.toChar(i));
+        }
+        assertFalse(UPPER.contains('a'));
+        assertEquals(Alphabet.NOT_FOUND, UPPER.toInt('a'));
+        assertEquals(Alphabet.NOT_FOUND, UPPER.toInt('\u4e00'));
+    }
+
+    @Test
+    public void checkHighCodePoints() {
+        String chars = "A\u4e00\u4e01\uffef\u0101";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(5, alpha.size());
+        for (int i = 0; i < chars.length(); i++) {
+            assertEquals(i, alpha.toInt(chars.charAt(i)));
+        }
+        assertFalse(alpha.contains('B'));
+        assertFalse(alpha.contains('\u4e02'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkIllegal() {
+        new Alphabet("AB(C");
+    }
+
+}
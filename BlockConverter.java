@@ -0,0 +1,282 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts the message lines of successive settings blocks concurrently,
+ *  writing the results in their original order.  The lines of a block
+ *  are collected into chunks of at most about CHUNK characters, each of
+ *  which is converted and formatted on a worker thread by a machine of
+ *  that thread's own, set up from the State recorded at the block's
+ *  settings line and advanced past the characters of the block's earlier
+ *  chunks.  Where the rotors cannot be sought without stepping, each
+ *  chunk of a block instead starts from the State in which the block's
+ *  previous chunk left its machine, and so waits for it; different
+ *  blocks are still converted concurrently.  Finished chunks wait in a
+ *  reorder buffer of at most WINDOW per worker; when it is full, the
+ *  caller waits for the oldest chunk and writes it out, so memory use
+ *  does not depend on the input.
+ *  @author Brian Chiang
+ */
+class BlockConverter {
+
+    /** A converter using replicas of TEMPLATE on THREADS worker threads,
+     *  writing to OUTPUT. */
+    BlockConverter(Machine template, GroupWriter output, int threads) {
+        _output = output;
+        _workers = new ForkJoinPool(threads);
+        _window = WINDOW * threads;
+        _pending = new ArrayDeque<>();
+        _machines = ThreadLocal.withInitial(template::replicate);
+        _writers = ThreadLocal.withInitial(
+            () -> new ChunkWriter(output.charset()));
+        _chunk = new Chunk(null, 0, 0);
+    }
+
+    /** Start a new block of messages converted from STATE. */
+    void begin(Machine.State state) {
+        submit(new Chunk(state, 0, 0));
+    }
+
+    /** Add BUFFER[START .. START+LEN-1], a piece of a message line
+     *  holding LETTERS characters of the alphabet, to the current block,
+     *  ending its line iff LINEEND. */
+    void add(char[] buffer, int start, int len, int letters,
+             boolean lineEnd) {
+        _chunk.append(buffer, start, len, letters, lineEnd);
+        if (_chunk._length >= CHUNK) {
+            Chunk next = new Chunk(_chunk._state,
+                                   _chunk._offset + _chunk._letters,
+                                   _chunk._line);
+            if (_chunk._state != null && !_chunk._state.seekable()) {
+                next.follow(_chunk);
+            }
+            submit(next);
+        }
+    }
+
+    /** Convert everything added so far, write it out, and stop my
+     *  workers. */
+    void finish() {
+        try {
+            submit(null);
+            while (!_pending.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            _workers.shutdown();
+        }
+    }
+
+    /** Hand the current chunk to a worker, if it has anything in it, and
+     *  make NEXT current. */
+    private void submit(Chunk next) {
+        Chunk chunk = _chunk;
+        if (chunk._length > 0) {
+            if (_pending.size() >= _window) {
+                writeOldest();
+            }
+            if (chunk._start == null) {
+                _pending.add(_workers.submit(() -> convert(chunk, null)));
+            } else {
+                _pending.add(chunk._start.thenApplyAsync(
+                    state -> convert(chunk, state), _workers));
+            }
+        }
+        _chunk = next;
+    }
+
+    /** Wait for the oldest pending chunk and write it to _output. */
+    private void writeOldest() {
+        byte[] bytes;
+        try {
+            bytes = _pending.remove().get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("conversion failed: %s", excp.getCause());
+        }
+        _output.writeEncoded(bytes, 0, bytes.length);
+    }
+
+    /** Return the encoded output for CHUNK, converted from STATE (null
+     *  before the first settings line) and formatted on the calling
+     *  thread. */
+    private byte[] convert(Chunk chunk, Machine.State state) {
+        Machine machine = _machines.get();
+        ChunkWriter writer = _writers.get();
+        char[] text = chunk._text;
+        try {
+            if (state != null) {
+                machine.restore(state);
+                machine.seek(chunk._skip);
+            }
+            writer._groups.resumeLine(chunk._column);
+            int start = 0;
+            for (int i = 0; i <= chunk._length; i++) {
+                if (i == chunk._length || text[i] == LINE_END) {
+                    if (state != null) {
+                        machine.convert(text, start, i - start);
+                    }
+                    writer._groups.write(text, start, i - start);
+                    if (i < chunk._length) {
+                        writer._groups.endLine();
+                    }
+                    start = i + 1;
+                }
+            }
+            writer._groups.flush();
+        } catch (RuntimeException excp) {
+            writer._bytes.reset();
+            if (chunk._end != null) {
+                chunk._end.completeExceptionally(excp);
+            }
+            throw excp;
+        }
+        if (chunk._end != null) {
+            chunk._end.complete(machine.state());
+        }
+        byte[] bytes = writer._bytes.toByteArray();
+        writer._bytes.reset();
+        return bytes;
+    }
+
+    /** A piece of a block, with where it starts. */
+    private static class Chunk {
+
+        /** An empty chunk of the block set up from STATE (null before the
+         *  first settings line), starting after OFFSET of its characters
+         *  and COLUMN of those of its first line. */
+        Chunk(Machine.State state, long offset, long column) {
+            _state = state;
+            _offset = offset;
+            _column = column;
+            _line = column;
+            _text = new char[INITIAL_SIZE];
+            if (state != null) {
+                _start = CompletableFuture.completedFuture(state);
+                _skip = offset;
+            }
+        }
+
+        /** Start from the state in which PREVIOUS, the chunk before me
+         *  in my block, leaves its machine, rather than seeking. */
+        void follow(Chunk previous) {
+            previous._end = new CompletableFuture<>();
+            _start = previous._end;
+            _skip = 0;
+        }
+
+        /** Append BUFFER[START .. START+LEN-1], holding LETTERS
+         *  characters of the alphabet, ending its line iff LINEEND. */
+        void append(char[] buffer, int start, int len, int letters,
+                    boolean lineEnd) {
+            int size = _length + len + 1;
+            if (size > _text.length) {
+                char[] text = new char[Math.max(size, 2 * _text.length)];
+                System.arraycopy(_text, 0, text, 0, _length);
+                _text = text;
+            }
+            System.arraycopy(buffer, start, _text, _length, len);
+            _length += len;
+            _letters += letters;
+            _line += letters;
+            if (lineEnd) {
+                _text[_length] = LINE_END;
+                _length += 1;
+                _line = 0;
+            }
+        }
+
+        /** Settings of my block, or null. */
+        private final Machine.State _state;
+
+        /** The state my machine starts from, once known, or null before
+         *  the first settings line. */
+        private CompletableFuture<Machine.State> _start;
+
+        /** Characters my machine skips after starting from _start. */
+        private long _skip;
+
+        /** Completed with the state my machine is left in, if the next
+         *  chunk starts from it, and otherwise null. */
+        private CompletableFuture<Machine.State> _end;
+
+        /** Characters of my block, and of my first line, that come
+         *  before me. */
+        private final long _offset, _column;
+
+        /** My lines, each ended by LINE_END but perhaps the last. */
+        private char[] _text;
+
+        /** Number of characters in _text. */
+        private int _length;
+
+        /** Number of characters of the alphabet in me, and in my last
+         *  line (including those before me). */
+        private long _letters, _line;
+    }
+
+    /** A worker's formatter, writing into a reusable byte array. */
+    private static class ChunkWriter {
+
+        /** A writer for one worker, encoding in CHARSET. */
+        ChunkWriter(Charset charset) {
+            _bytes = new ByteArrayOutputStream();
+            _groups = new GroupWriter(_bytes, charset);
+        }
+
+        /** Destination of _groups. */
+        private final ByteArrayOutputStream _bytes;
+
+        /** Formatter of converted lines. */
+        private final GroupWriter _groups;
+    }
+
+    /** Chunks are handed to workers once they have this many
+     *  characters. */
+    static final int CHUNK = 1 << 16;
+
+    /** Most chunks per worker waiting to be written. */
+    static final int WINDOW = 4;
+
+    /** Initial capacity of a chunk. */
+    private static final int INITIAL_SIZE = 1 << 10;
+
+    /** Marks the end of a line in a chunk.  It is never in a piece of a
+     *  line, and never converted. */
+    private static final char LINE_END = '\n';
+
+    /** Destination of converted messages. */
+    private final GroupWriter _output;
+
+    /** Worker threads. */
+    private final ExecutorService _workers;
+
+    /** Most pending chunks. */
+    private final int _window;
+
+    /** Chunks being converted, oldest first. */
+    private final ArrayDeque<Future<byte[]>> _pending;
+
+    /** Each worker's machine. */
+    private final ThreadLocal<Machine> _machines;
+
+    /** Each worker's formatter. */
+    private final ThreadLocal<ChunkWriter> _writers;
+
+    /** The chunk being collected. */
+    private Chunk _chunk;
+}
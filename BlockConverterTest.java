@@ -0,0 +1,105 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BlockConverter class.
+ *  @author Brian Chiang
+ */
+public class BlockConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkStateRestore() {
+        Machine m = standardMachine();
+        Main.setUp(m, STANDARD_SETTINGS[1]);
+        m.convert("SKIPTHESE");
+        Machine.State state = m.state();
+        String expected = m.convert(MESSAGE);
+        Machine other = m.replicate();
+        Main.setUp(other, STANDARD_SETTINGS[0]);
+        other.restore(state);
+        assertEquals(expected, other.convert(MESSAGE));
+    }
+
+    @Test
+    public void checkOrderedOutput() {
+        Random random = new Random(5);
+        Machine tracker = standardMachine();
+        Machine serial = standardMachine();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        GroupWriter expectedOut =
+            new GroupWriter(expected, StandardCharsets.UTF_8);
+        GroupWriter actualOut = new GroupWriter(actual, StandardCharsets.UTF_8);
+        BlockConverter blocks = new BlockConverter(tracker, actualOut, 3);
+        char[] empty = new char[0];
+        expectedOut.endLine();
+        blocks.add(empty, 0, 0, 0, true);
+        for (int b = 0; b < 30; b++) {
+            String settings =
+                STANDARD_SETTINGS[random.nextInt(STANDARD_SETTINGS.length)];
+            Main.setUp(tracker, settings);
+            Main.setUp(serial, settings);
+            blocks.begin(tracker.state());
+            for (int k = random.nextInt(4); k > 0; k--) {
+                int len = random.nextInt(4) == 0
+                    ? random.nextInt(3 * BlockConverter.CHUNK)
+                    : random.nextInt(100);
+                char[] line = new char[len];
+                for (int i = 0; i < len; i++) {
+                    line[i] = i % 7 == 3 ? ' '
+                        : (char) ('A' + random.nextInt(26));
+                }
+                char[] copy = line.clone();
+                serial.convert(copy, 0, len);
+                expectedOut.write(copy, 0, len);
+                expectedOut.endLine();
+                for (int start = 0; start < len || start == 0;
+                     start += PIECE) {
+                    int n = Math.min(PIECE, len - start);
+                    blocks.add(line, start, n, letters(line, start, n),
+                               start + n == len);
+                }
+            }
+        }
+        blocks.finish();
+        expectedOut.flush();
+        actualOut.flush();
+        assertEquals(expected.toString(StandardCharsets.UTF_8),
+                     actual.toString(StandardCharsets.UTF_8));
+    }
+
+    /* ***** HELPERS ***** */
+
+    /** Return the number of non-blank characters in LINE[START ..
+     *  START+LEN-1]. */
+    private static int letters(char[] line, int start, int len) {
+        int count = 0;
+        for (int i = start; i < start + len; i++) {
+            if (line[i] != ' ') {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** A message to convert. */
+    private static final String MESSAGE = "FROMHISSHOULDERHIAWATHA";
+
+    /** Largest piece of a line given to the converter at once. */
+    private static final int PIECE = 1 << 12;
+}
@@ -0,0 +1,555 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the settings of a ciphertext with no known plaintext by
+ *  scoring trial decryptions against the statistics of the language.
+ *
+ *  The attack has three stages.  First, every rotor order that fits the
+ *  machine is tried at every start position, and every ring of the fast
+ *  rotor if its notches matter, with other rings at 0 and no plugboard,
+ *  and the KEEP candidates whose decryptions have the highest index of
+ *  coincidence are kept; the orders' positions are split among the
+ *  threads of a ForkJoinPool as in CribSearch.  The fast rotor's ring
+ *  is tried here because it decides when the next rotor first moves,
+ *  without which too little of a decryption is right to be noticed.
+ *  Then each kept candidate is improved on a thread of its own: the
+ *  rings that move notches that matter (see CribSearch) are
+ *  hill-climbed, one at a time, on the bigram log-likelihood; and then
+ *  plugboard pairs, up to PAIRS of them, are hill-climbed on the
+ *  trigram and then quadgram log-likelihood.  The candidate whose
+ *  decryption then scores best on quadgrams wins.
+ *
+ *  The plugboard does not change how the rotors step, so while it is
+ *  climbed the substitution made by the rotors at each position of the
+ *  message is tabulated once, and each trial plugboard costs just three
+ *  table reads per character.  Trial decryptions are written into
+ *  arrays belonging to each thread, so no scoring loop allocates.
+ *  @author Brian Chiang
+ */
+class CiphertextAttack {
+
+    /** An attack on CIPHERTEXT, which holds only characters of TEMPLATE's
+     *  alphabet, by machines like TEMPLATE, scoring with BIGRAMS, TRIGRAMS
+     *  and QUADGRAMS, keeping KEEP candidates from the first stage and
+     *  using at most PAIRS plugboard pairs. */
+    CiphertextAttack(Machine template, String ciphertext,
+                     NgramTable bigrams, NgramTable trigrams,
+                     NgramTable quadgrams, int keep, int pairs) {
+        Alphabet alphabet = template.alphabet();
+        if (ciphertext.length() < 2) {
+            throw error("ciphertext is too short to attack");
+        }
+        if (bigrams.length() != 2 || trigrams.length() != 3
+            || quadgrams.length() != 4) {
+            throw error("wrong n-gram tables");
+        }
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < _cipher.length; i++) {
+            _cipher[i] = alphabet.toInt(ciphertext.charAt(i));
+            if (_cipher[i] == Alphabet.NOT_FOUND) {
+                throw error("%s is not valid", ciphertext.charAt(i));
+            }
+        }
+        _template = template;
+        _bigrams = bigrams;
+        _trigrams = trigrams;
+        _quadgrams = quadgrams;
+        _keep = keep;
+        _pairs = pairs;
+        _orders = CribSearch.rotorOrders(template);
+        _ringSlots = CribSearch.ringSlots(template);
+        int n = template.numRotors();
+        long positions = 1;
+        try {
+            for (int i = _ringSlots.length > 0 ? 0 : 1; i < n; i++) {
+                positions = Math.multiplyExact(positions, alphabet.size());
+            }
+        } catch (ArithmeticException excp) {
+            throw error("too many positions to search");
+        }
+        _positions = positions;
+        _kept = new PriorityQueue<>((a, b) -> Double.compare(a._score,
+                                                             b._score));
+        _threshold = Double.NEGATIVE_INFINITY;
+        _tried = new LongAdder();
+        _climbed = new LongAdder();
+        _machines = ThreadLocal.withInitial(() -> {
+            Machine m = _template.replicate();
+            m.setCompiled(false);
+            return m;
+        });
+        _work = ThreadLocal.withInitial(Work::new);
+    }
+
+    /** Run the attack on THREADS threads, giving PROGRESS a report of
+     *  how far it has got every PROGRESS_SECONDS seconds, with the best
+     *  candidate kept so far during the first stage, and a line whenever
+     *  a better candidate is climbed.  Return the best settings
+     *  line found, with its plugboard, or null if there were no rotor
+     *  orders to try. */
+    String attack(int threads, Consumer<String> progress) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            await(pool.submit(new Scan(0, _orders.size(), 0, _positions)),
+                  progress, this::scanProgress);
+            List<Candidate> kept = new ArrayList<>(_kept);
+            await(pool.submit(new Climb(kept, 0, kept.size(), progress)),
+                  progress, () -> String.format(
+                      "climbing: %d of %d candidates done",
+                      _climbed.sum(), kept.size()));
+        } finally {
+            pool.shutdown();
+        }
+        return _best == null ? null : line(_best);
+    }
+
+    /** Return the number of rotor orders tried. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the number of start positions, with rings of the fast
+     *  rotor, tried for each rotor order. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the quadgram log-likelihood of the best decryption found
+     *  so far, or negative infinity if there is none. */
+    synchronized double bestScore() {
+        return _best == null ? Double.NEGATIVE_INFINITY : _best._score;
+    }
+
+    /** Return a report of how far the first stage has got, with the
+     *  best candidate it has kept so far and its index of
+     *  coincidence. */
+    synchronized String scanProgress() {
+        String tried = String.format("positions: %d of %d tried",
+                                     _tried.sum(),
+                                     _orders.size() * _positions);
+        Candidate top = null;
+        for (Candidate c : _kept) {
+            if (top == null || c._score > top._score) {
+                top = c;
+            }
+        }
+        return top == null ? tried
+            : String.format("%s; best kept (IC %.4f): %s", tried,
+                            top._score, line(top));
+    }
+
+    /** Wait for TASK, giving PROGRESS the report from STATUS every
+     *  PROGRESS_SECONDS seconds, and report any failure. */
+    private void await(ForkJoinTask<?> task, Consumer<String> progress,
+                       Supplier<String> status) {
+        while (true) {
+            try {
+                task.get(PROGRESS_SECONDS, TimeUnit.SECONDS);
+                return;
+            } catch (TimeoutException excp) {
+                progress.accept(status.get());
+            } catch (InterruptedException excp) {
+                task.cancel(true);
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof EnigmaException) {
+                    throw (EnigmaException) excp.getCause();
+                }
+                throw error("attack failed: %s", excp.getCause());
+            }
+        }
+    }
+
+    /** Try the positions LO .. HI-1 of rotor order ORDER on the calling
+     *  thread, keeping the best.  A position number's digits, most
+     *  significant first, are the internal settings of my rotors and
+     *  then, if its notches matter, the ring of the fast rotor. */
+    private void scan(int order, long lo, long hi) {
+        Machine m = _machines.get();
+        Work w = _work.get();
+        m.insertRotors(_orders.get(order));
+        int n = m.numRotors();
+        int size = m.alphabet().size();
+        int[] settings = new int[n];
+        int[] rings = new int[n];
+        long rest = lo;
+        if (_ringSlots.length > 0) {
+            rings[n - 1] = (int) (rest % size);
+            rest /= size;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            settings[i] = (int) (rest % size);
+            rest /= size;
+        }
+        for (long c = lo; c < hi; c++) {
+            m.setRotors(settings, rings);
+            double score =
+                NgramTable.indexOfCoincidence(w._text, decrypt(m, w._text),
+                                              w._counts);
+            if (score > _threshold) {
+                keep(new Candidate(order, settings.clone(), rings.clone(),
+                                   score));
+            }
+            if (_ringSlots.length > 0) {
+                rings[n - 1] += 1;
+                if (rings[n - 1] < size) {
+                    continue;
+                }
+                rings[n - 1] = 0;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                settings[i] += 1;
+                if (settings[i] < size) {
+                    break;
+                }
+                settings[i] = 0;
+            }
+        }
+        _tried.add(hi - lo);
+    }
+
+    /** Add CANDIDATE to those kept from the first stage if it is among
+     *  the best _keep so far. */
+    private synchronized void keep(Candidate candidate) {
+        _kept.add(candidate);
+        if (_kept.size() > _keep) {
+            _kept.remove();
+        }
+        if (_kept.size() == _keep) {
+            _threshold = _kept.peek()._score;
+        }
+    }
+
+    /** Improve CANDIDATE's rings and plugboard on the calling thread,
+     *  giving PROGRESS a line if it becomes the best so far. */
+    private void climb(Candidate candidate, Consumer<String> progress) {
+        Machine m = _machines.get();
+        Work w = _work.get();
+        m.insertRotors(_orders.get(candidate._order));
+        int size = m.alphabet().size();
+        int[] settings = candidate._settings, rings = candidate._rings;
+        double best = Double.NEGATIVE_INFINITY;
+        for (boolean improved = true; improved;) {
+            improved = false;
+            for (int slot : _ringSlots) {
+                int start = rings[slot], keep = start;
+                for (int r = 0; r < size; r++) {
+                    rings[slot] = r;
+                    m.setRotors(settings, rings);
+                    double score = _bigrams.score(w._text,
+                                                  decrypt(m, w._text));
+                    if (score > best) {
+                        best = score;
+                        keep = r;
+                    }
+                }
+                rings[slot] = keep;
+                improved |= keep != start;
+            }
+        }
+        m.setRotors(settings, rings);
+        tabulate(m, w);
+        int[] plug = candidate._plug;
+        climbPlugboard(plug, _trigrams, w);
+        candidate._score = climbPlugboard(plug, _quadgrams, w);
+        _climbed.increment();
+        synchronized (this) {
+            if (_best == null || candidate._score > _best._score) {
+                _best = candidate;
+                progress.accept(String.format("best so far (%.1f): %s",
+                                              candidate._score,
+                                              line(candidate)));
+            }
+        }
+    }
+
+    /** Hill-climb PLUG, an involution of Alphabet indices, to maximize
+     *  the TABLE score of the decryption tabulated in W, connecting or
+     *  disconnecting one pair at a time, and return the final score. */
+    private double climbPlugboard(int[] plug, NgramTable table, Work w) {
+        double best = table.score(w._text, plugDecrypt(plug, w));
+        for (boolean improved = true; improved;) {
+            improved = false;
+            for (int a = 0; a < plug.length; a++) {
+                for (int b = a + 1; b < plug.length; b++) {
+                    int pa = plug[a], pb = plug[b];
+                    if (pa == b) {
+                        plug[a] = a;
+                        plug[b] = b;
+                    } else {
+                        plug[pa] = pa;
+                        plug[pb] = pb;
+                        plug[a] = b;
+                        plug[b] = a;
+                        if (pairs(plug) > _pairs) {
+                            restore(plug, a, pa, b, pb);
+                            continue;
+                        }
+                    }
+                    double score = table.score(w._text, plugDecrypt(plug, w));
+                    if (score > best) {
+                        best = score;
+                        improved = true;
+                    } else {
+                        restore(plug, a, pa, b, pb);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Undo a trial change to PLUG that connected A and B, where A was
+     *  connected to PA and B to PB. */
+    private static void restore(int[] plug, int a, int pa, int b, int pb) {
+        plug[a] = pa;
+        plug[b] = pb;
+        plug[pa] = a;
+        plug[pb] = b;
+    }
+
+    /** Return the number of pairs connected by PLUG. */
+    private static int pairs(int[] plug) {
+        int count = 0;
+        for (int i = 0; i < plug.length; i++) {
+            if (plug[i] > i) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Decrypt my ciphertext with M, as set up, into TEXT, returning its
+     *  length. */
+    private int decrypt(Machine m, int[] text) {
+        for (int i = 0; i < _cipher.length; i++) {
+            text[i] = m.convert(_cipher[i]);
+        }
+        return _cipher.length;
+    }
+
+    /** Record in W the substitution made by M, as set up and without a
+     *  plugboard, at each position of my ciphertext, making W's table
+     *  for it the first time. */
+    private void tabulate(Machine m, Work w) {
+        int size = m.alphabet().size();
+        if (w._rotors == null) {
+            w._rotors = new int[_cipher.length * size];
+        }
+        int[] rotors = w._rotors;
+        for (int i = 0; i < _cipher.length; i++) {
+            int base = i * size;
+            rotors[base] = m.convert(0);
+            for (int c = 1; c < size; c++) {
+                rotors[base + c] = m.substitute(c);
+            }
+        }
+    }
+
+    /** Decrypt my ciphertext into W's text with the substitutions in W
+     *  and plugboard PLUG, returning its length. */
+    private int plugDecrypt(int[] plug, Work w) {
+        int size = plug.length;
+        int[] rotors = w._rotors, text = w._text;
+        for (int i = 0; i < _cipher.length; i++) {
+            text[i] = plug[rotors[i * size + plug[_cipher[i]]]];
+        }
+        return _cipher.length;
+    }
+
+    /** Return the settings line of CANDIDATE. */
+    private String line(Candidate candidate) {
+        Alphabet alphabet = _template.alphabet();
+        String line =
+            CribSearch.settingsLine(alphabet, _orders.get(candidate._order),
+                                    candidate._settings, candidate._rings);
+        String cycles = new Permutation(candidate._plug, candidate._plug,
+                                        alphabet).cycles();
+        return cycles.isEmpty() ? line : line + " " + cycles;
+    }
+
+    /** A rotor order with settings and rings, a plugboard, which is
+     *  empty until climbed, and its score. */
+    private class Candidate {
+
+        /** Rotor order number ORDER at internal SETTINGS and RINGS, whose
+         *  decryption scored SCORE. */
+        Candidate(int order, int[] settings, int[] rings, double score) {
+            _order = order;
+            _settings = settings;
+            _rings = rings;
+            _plug = new int[_template.alphabet().size()];
+            for (int i = 0; i < _plug.length; i++) {
+                _plug[i] = i;
+            }
+            _score = score;
+        }
+
+        /** Index of my rotor order. */
+        private final int _order;
+
+        /** My internal rotor settings and rings, by slot. */
+        private final int[] _settings, _rings;
+
+        /** My plugboard, an involution of Alphabet indices. */
+        private final int[] _plug;
+
+        /** Score of my decryption. */
+        private double _score;
+    }
+
+    /** A thread's scratch space. */
+    private class Work {
+
+        /** A decrypted message. */
+        private final int[] _text = new int[_cipher.length];
+
+        /** Counts of each character. */
+        private final int[] _counts = new int[_template.alphabet().size()];
+
+        /** Substitution made by the rotors at each position, or null
+         *  until this thread first climbs a plugboard. */
+        private int[] _rotors;
+    }
+
+    /** Start positions of rotor orders FIRST .. LAST-1, or when those are
+     *  one order, its positions LO .. HI-1, split in halves until small
+     *  enough for one thread to try. */
+    private class Scan extends RecursiveAction {
+
+        /** Positions of orders FIRST .. LAST-1, of which LO .. HI-1 if
+         *  just one. */
+        Scan(int first, int last, long lo, long hi) {
+            _first = first;
+            _last = last;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_last - _first > 1) {
+                int mid = (_first + _last) >>> 1;
+                invokeAll(new Scan(_first, mid, _lo, _hi),
+                          new Scan(mid, _last, _lo, _hi));
+            } else if (_first == _last) {
+                return;
+            } else if ((_hi - _lo) * _cipher.length > LEAF) {
+                long mid = _lo + (_hi - _lo) / 2;
+                invokeAll(new Scan(_first, _last, _lo, mid),
+                          new Scan(_first, _last, mid, _hi));
+            } else {
+                scan(_first, _lo, _hi);
+            }
+        }
+
+        /** Range of rotor orders. */
+        private final int _first, _last;
+
+        /** Range of positions. */
+        private final long _lo, _hi;
+    }
+
+    /** Candidates FIRST .. LAST-1 of CANDIDATES, climbed in parallel. */
+    private class Climb extends RecursiveAction {
+
+        /** Climbing CANDIDATES[FIRST .. LAST-1], reporting to
+         *  PROGRESS. */
+        Climb(List<Candidate> candidates, int first, int last,
+              Consumer<String> progress) {
+            _candidates = candidates;
+            _first = first;
+            _last = last;
+            _progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (_last - _first > 1) {
+                int mid = (_first + _last) >>> 1;
+                invokeAll(new Climb(_candidates, _first, mid, _progress),
+                          new Climb(_candidates, mid, _last, _progress));
+            } else if (_last > _first) {
+                climb(_candidates.get(_first), _progress);
+            }
+        }
+
+        /** All candidates. */
+        private final List<Candidate> _candidates;
+
+        /** Range of candidates. */
+        private final int _first, _last;
+
+        /** Destination of progress reports. */
+        private final Consumer<String> _progress;
+    }
+
+    /** Default number of candidates kept from the first stage. */
+    static final int KEEP = 100;
+
+    /** Default most plugboard pairs. */
+    static final int PAIRS = 10;
+
+    /** Seconds between progress reports. */
+    static final int PROGRESS_SECONDS = 10;
+
+    /** Most characters decrypted as one task of the first stage. */
+    private static final long LEAF = 1 << 20;
+
+    /** The machine all others are replicas of. */
+    private final Machine _template;
+
+    /** Indices of the ciphertext's characters. */
+    private final int[] _cipher;
+
+    /** Tables scoring decryptions. */
+    private final NgramTable _bigrams, _trigrams, _quadgrams;
+
+    /** Number of candidates kept from the first stage. */
+    private final int _keep;
+
+    /** Most plugboard pairs. */
+    private final int _pairs;
+
+    /** Every rotor order tried. */
+    private final List<String[]> _orders;
+
+    /** Slots whose rings are climbed. */
+    private final int[] _ringSlots;
+
+    /** Number of start positions of each rotor order. */
+    private final long _positions;
+
+    /** The best candidates of the first stage, worst first. */
+    private final PriorityQueue<Candidate> _kept;
+
+    /** Score a candidate must beat to be kept, once _keep are. */
+    private volatile double _threshold;
+
+    /** Counts of positions tried and candidates climbed. */
+    private final LongAdder _tried, _climbed;
+
+    /** Each thread's machine. */
+    private final ThreadLocal<Machine> _machines;
+
+    /** Each thread's scratch space. */
+    private final ThreadLocal<Work> _work;
+
+    /** The best climbed candidate, or null. */
+    private Candidate _best;
+}
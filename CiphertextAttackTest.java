@@ -0,0 +1,76 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CiphertextAttack class.
+ *  @author Brian Chiang
+ */
+public class CiphertextAttackTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return LEN characters of a made-up language, chosen by RANDOM,
+     *  in which some characters are much commoner than others, and each
+     *  is often followed by a particular other. */
+    private static String language(int len, Random random) {
+        int[] weights = { 30, 20, 15, 10, 10, 7, 5, 3 };
+        StringBuilder result = new StringBuilder();
+        int c = 0;
+        for (int i = 0; i < len; i++) {
+            result.append(AH.toChar(c));
+            if (random.nextBoolean()) {
+                c = (3 * c + 1) % AH.size();
+            } else {
+                int r = random.nextInt(100);
+                for (c = 0; r >= weights[c]; c++) {
+                    r -= weights[c];
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRecoversMessage() {
+        String sample = language(50000, new Random(1));
+        String plain = language(400, new Random(2));
+        String settings = "* R F M3 M1 CBE AAD (AG)";
+        Machine mach = smallMachine();
+        Main.setUp(mach, settings);
+        String cipher = mach.convert(plain);
+        CiphertextAttack attack =
+            new CiphertextAttack(smallMachine(), cipher,
+                                 new NgramTable(AH, 2, sample),
+                                 new NgramTable(AH, 3, sample),
+                                 new NgramTable(AH, 4, sample), 20, 2);
+        assertEquals(6, attack.orders());
+        assertEquals(8 * 8 * 8 * 8, attack.positions());
+        List<String> progress = new ArrayList<>();
+        assertEquals("positions: 0 of 24576 tried", attack.scanProgress());
+        String best = attack.attack(2, progress::add);
+        assertTrue(attack.scanProgress().startsWith(
+            "positions: 24576 of 24576 tried; best kept (IC "));
+        assertFalse(progress.isEmpty());
+        assertEquals(progress.get(progress.size() - 1),
+                     String.format("best so far (%.1f): %s",
+                                   attack.bestScore(), best));
+        Machine found = smallMachine();
+        Main.setUp(found, best);
+        assertEquals(best, plain, found.convert(cipher));
+    }
+}
@@ -0,0 +1,172 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.EnigmaException.*;
+
+/** Reads and writes precompiled machine configurations.  A snapshot holds
+ *  everything Main.readConfig derives from a configuration file, already
+ *  validated, so that loading one needs no parsing: just one bulk read
+ *  (or a mapping, for large snapshots) and a linear check that each
+ *  rotor's tables are a permutation and its inverse, so that a damaged
+ *  snapshot is reported when it is read rather than when it is used.
+ *
+ *  All values are big-endian.  A snapshot is MAGIC (8 bytes), VERSION,
+ *  the number of rotor slots and pawls, the alphabet, and the number of
+ *  rotors followed by each rotor: its type byte ('M', 'N' or 'R'), name,
+ *  notches, and the forward and inverse tables of its permutation.
+ *  Strings are an int length followed by that many chars; tables are
+ *  alphabet-size ints.
+ *  @author Brian Chiang
+ */
+class ConfigSnapshot {
+
+    /** Not instantiable. */
+    private ConfigSnapshot() {
+    }
+
+    /** Write a snapshot of the configuration of MACHINE, whose rotors
+     *  need not be inserted, to the file FILE. */
+    static void write(Machine machine, Path file) {
+        Alphabet alpha = machine.alphabet();
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(machine.numRotors());
+            out.writeInt(machine.numPawls());
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < alpha.size(); i++) {
+                chars.append(alpha.toChar(i));
+            }
+            writeString(out, chars.toString());
+            out.writeInt(machine.availableRotors().size());
+            for (Rotor r : machine.availableRotors()) {
+                Permutation perm = r.permutation();
+                out.writeByte(r.reflecting() ? 'R' : r.rotates() ? 'M' : 'N');
+                writeString(out, r.name());
+                writeString(out, r.notches());
+                for (int i = 0; i < alpha.size(); i++) {
+                    out.writeInt(perm.permute(i));
+                }
+                for (int i = 0; i < alpha.size(); i++) {
+                    out.writeInt(perm.invert(i));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return true iff FILE exists and begins like a snapshot. */
+    static boolean isSnapshot(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(Long.BYTES);
+            return head.length == Long.BYTES
+                && ByteBuffer.wrap(head).getLong() == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the machine whose configuration is in the snapshot FILE. */
+    static Machine read(Path file) {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                in = ByteBuffer.allocate((int) size);
+                while (in.hasRemaining() && channel.read(in) >= 0) {
+                    continue;
+                }
+                in.flip();
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        try {
+            if (in.getLong() != MAGIC || in.getInt() != VERSION) {
+                throw error("%s is not a configuration snapshot", file);
+            }
+            int numRotors = in.getInt();
+            int pawls = in.getInt();
+            Alphabet alpha = new Alphabet(readString(in, file));
+            int count = in.getInt();
+            RotorLibrary library = new RotorLibrary(Main.expansionLimit());
+            for (int k = 0; k < count; k++) {
+                char type = (char) in.get();
+                String name = readString(in, file);
+                String notches = readString(in, file);
+                int[] forward = readTable(in, alpha, file);
+                int[] inverse = readTable(in, alpha, file);
+                for (int i = 0; i < inverse.length; i++) {
+                    if (forward[inverse[i]] != i) {
+                        throw error("%s is a corrupt snapshot", file);
+                    }
+                }
+                library.define(name, type, notches,
+                    () -> new Permutation(forward, inverse, alpha));
+            }
+            return new Machine(alpha, numRotors, pawls, library);
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            throw error("%s is a corrupt snapshot", file);
+        }
+    }
+
+    /** Write S to OUT as its length followed by its chars. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Return the string at the current position of IN, as written by
+     *  writeString.  FILE names the snapshot being read. */
+    private static String readString(ByteBuffer in, Path file) {
+        int len = in.getInt();
+        if (len < 0 || (long) Character.BYTES * len > in.remaining()) {
+            throw error("%s is a corrupt snapshot", file);
+        }
+        char[] chars = new char[len];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + Character.BYTES * len);
+        return new String(chars);
+    }
+
+    /** Return the table of one index of ALPHA per character at the
+     *  current position of IN, checking that it is a permutation of
+     *  those indices.  FILE names the snapshot being read. */
+    private static int[] readTable(ByteBuffer in, Alphabet alpha,
+                                   Path file) {
+        int[] table = new int[alpha.size()];
+        in.asIntBuffer().get(table);
+        in.position(in.position() + Integer.BYTES * table.length);
+        boolean[] seen = new boolean[table.length];
+        for (int k : table) {
+            if (k < 0 || k >= table.length || seen[k]) {
+                throw error("%s is a corrupt snapshot", file);
+            }
+            seen[k] = true;
+        }
+        return table;
+    }
+
+    /** First eight bytes of every snapshot: "ENIGSNAP". */
+    static final long MAGIC = 0x454E4947534E4150L;
+
+    /** Version of the snapshot format. */
+    static final int VERSION = 1;
+
+    /** Snapshots at least this large are mapped rather than read. */
+    static final long MAP_THRESHOLD = 1 << 20;
+}
@@ -0,0 +1,160 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigSnapshot class.
+ *  @author Brian Chiang
+ */
+public class ConfigSnapshotTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Machine text = standardMachine();
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            ConfigSnapshot.write(text, file);
+            assertTrue(ConfigSnapshot.isSnapshot(file));
+            Machine snap = Main.loadConfig(file.toString());
+            assertEquals(text.numRotors(), snap.numRotors());
+            assertEquals(text.numPawls(), snap.numPawls());
+            assertEquals(text.availableRotors().size(),
+                         snap.availableRotors().size());
+            for (int k = 0; k < text.availableRotors().size(); k++) {
+                Rotor r = text.availableRotors().get(k);
+                Rotor s = snap.availableRotors().get(k);
+                assertEquals(r.name(), s.name());
+                assertEquals(r.notches(), s.notches());
+                assertEquals(r.rotates(), s.rotates());
+                assertEquals(r.reflecting(), s.reflecting());
+                for (int i = 0; i < r.size(); i++) {
+                    assertEquals(r.permutation().permute(i),
+                                 s.permutation().permute(i));
+                    assertEquals(r.permutation().invert(i),
+                                 s.permutation().invert(i));
+                }
+            }
+            for (String settings : STANDARD_SETTINGS) {
+                Main.setUp(text, settings);
+                Main.setUp(snap, settings);
+                assertEquals(settings, text.convert(MESSAGE),
+                             snap.convert(MESSAGE));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkNotSnapshot() throws IOException {
+        Path file = Files.createTempFile("enigma", ".conf");
+        try {
+            Files.write(file, STANDARD_CONFIG.getBytes("US-ASCII"));
+            assertFalse(ConfigSnapshot.isSnapshot(file));
+            assertFalse(ConfigSnapshot.isSnapshot(file.resolveSibling(
+                "no-such-enigma-file")));
+            assertEquals(5, Main.loadConfig(file.toString()).numRotors());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkTruncated() throws IOException {
+        Machine text = standardMachine();
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            ConfigSnapshot.write(text, file);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 7));
+            try {
+                ConfigSnapshot.read(file);
+                fail("truncated snapshot was read");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("corrupt"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkCorruptTable() throws IOException {
+        Machine text = standardMachine();
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            ConfigSnapshot.write(text, file);
+            byte[] good = Files.readAllBytes(file);
+            int previous = ByteBuffer.wrap(good)
+                .getInt(good.length - 2 * Integer.BYTES);
+            for (int entry : new int[] { 26, -1, previous }) {
+                ByteBuffer bytes = ByteBuffer.wrap(good.clone());
+                bytes.putInt(good.length - Integer.BYTES, entry);
+                Files.write(file, bytes.array());
+                try {
+                    ConfigSnapshot.read(file);
+                    fail("corrupt table was read");
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().contains("corrupt"));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkCorruptStringLength() throws IOException {
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            ConfigSnapshot.write(standardMachine(), file);
+            byte[] good = Files.readAllBytes(file);
+            int at = Long.BYTES + 3 * Integer.BYTES;
+            for (int len : new int[] { Integer.MAX_VALUE, -1 }) {
+                ByteBuffer bytes = ByteBuffer.wrap(good.clone());
+                bytes.putInt(at, len);
+                Files.write(file, bytes.array());
+                try {
+                    ConfigSnapshot.read(file);
+                    fail("corrupt string length was read");
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().contains("corrupt"));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkTableCycles() {
+        Alphabet abc = new Alphabet("ABCDE");
+        Permutation perm = new Permutation(new int[] { 1, 2, 0, 3, 4 },
+                                           new int[] { 2, 0, 1, 3, 4 }, abc);
+        assertEquals("(ABC)", perm.cycles());
+        assertEquals('B', perm.permute('A'));
+        assertEquals('C', perm.invert('A'));
+    }
+
+    /* ***** HELPERS ***** */
+
+    /** A message to convert. */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+}
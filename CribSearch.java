@@ -0,0 +1,324 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the settings under which a ciphertext decrypts to a known piece
+ *  of plaintext, its crib, at a known offset.  Every order of the
+ *  configuration's rotors that fits the machine's slots is tried, with
+ *  every start position and every ring setting that can matter, and no
+ *  plugboard.
+ *
+ *  A ring only shifts its rotor's wiring relative to its setting, except
+ *  where it moves the rotor's notches, and the notches of a rotor matter
+ *  only when the rotor to its left rotates.  So candidates are numbered
+ *  by the internal setting of every rotor, as given by Rotor.setting(),
+ *  and the ring of each rotating rotor whose left neighbor rotates; all
+ *  other rings are left at 0.  Each rotor order's candidates are split
+ *  among the threads of a ForkJoinPool, halving ranges until they are
+ *  small, so that idle threads steal what is left of busy ones.  Each
+ *  thread tests candidates on a machine of its own, seeking to the crib
+ *  and giving up at the first character that does not match.  Matches
+ *  are handed out as settings lines as soon as they are found.
+ *  @author Brian Chiang
+ */
+class CribSearch {
+
+    /** A search for settings of machines like TEMPLATE under which
+     *  CIPHERTEXT, which holds only characters of TEMPLATE's alphabet,
+     *  decrypts to CRIB starting OFFSET characters in. */
+    CribSearch(Machine template, String ciphertext, String crib,
+               long offset) {
+        Alphabet alphabet = template.alphabet();
+        if (offset < 0 || crib.isEmpty()
+            || offset + crib.length() > ciphertext.length()) {
+            throw error("crib does not lie within the ciphertext");
+        }
+        _cipher = new int[crib.length()];
+        _crib = new int[crib.length()];
+        for (int i = 0; i < crib.length(); i++) {
+            _cipher[i] = alphabet.toInt(ciphertext.charAt((int) offset + i));
+            _crib[i] = alphabet.toInt(crib.charAt(i));
+            if (_cipher[i] == Alphabet.NOT_FOUND) {
+                throw error("%s is not valid",
+                            ciphertext.charAt((int) offset + i));
+            }
+            if (_crib[i] == Alphabet.NOT_FOUND) {
+                throw error("%s is not valid", crib.charAt(i));
+            }
+        }
+        _template = template;
+        _offset = offset;
+        _orders = rotorOrders(template);
+        _ringSlots = ringSlots(template);
+        int n = template.numRotors();
+        long perOrder = 1;
+        try {
+            for (int i = 1; i < n + _ringSlots.length; i++) {
+                perOrder = Math.multiplyExact(perOrder, alphabet.size());
+            }
+        } catch (ArithmeticException excp) {
+            throw error("too many settings to search");
+        }
+        _perOrder = perOrder;
+        _tried = new LongAdder();
+        _found = new LongAdder();
+        _machines = ThreadLocal.withInitial(() -> {
+            Machine m = _template.replicate();
+            m.setCompiled(false);
+            return m;
+        });
+    }
+
+    /** Search on THREADS threads, giving each match, as a settings line
+     *  without a plugboard, to RESULTS, one at a time, as it is found. */
+    void search(int threads, Consumer<String> results) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Part(results, 0, _orders.size(), 0, _perOrder));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the number of rotor orders tried. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the number of candidates tried for each rotor order. */
+    long candidatesPerOrder() {
+        return _perOrder;
+    }
+
+    /** Return the number of candidates tried so far. */
+    long tried() {
+        return _tried.sum();
+    }
+
+    /** Return the number of matches found so far. */
+    long found() {
+        return _found.sum();
+    }
+
+    /** Return every arrangement of the rotors available to MACHINE that
+     *  it accepts: a reflector, then non-moving rotors, then moving ones
+     *  in its last numPawls() slots, none used twice. */
+    static List<String[]> rotorOrders(Machine machine) {
+        List<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(),
+            moving = new ArrayList<>();
+        for (Rotor r : machine.availableRotors()) {
+            if (r.reflecting()) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[machine.numRotors()];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            arrange(order, 1, machine.numRotors() - machine.numPawls(),
+                    fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Return the slots of MACHINE whose rings can matter, from left to
+     *  right: those of the rotating rotors whose left neighbors also
+     *  rotate, since a ring otherwise only shifts its rotor's wiring
+     *  along with its setting. */
+    static int[] ringSlots(Machine machine) {
+        int n = machine.numRotors();
+        int pawls = machine.numPawls();
+        int[] slots = new int[Math.max(0, pawls - 1)];
+        for (int j = 0; j < slots.length; j++) {
+            slots[j] = n - pawls + 1 + j;
+        }
+        return slots;
+    }
+
+    /** Add to RESULT each way of filling ORDER[K ..] with distinct names,
+     *  from FIXED before slot MOVINGSLOT and from MOVING from it on,
+     *  keeping ORDER[0 .. K-1]. */
+    private static void arrange(String[] order, int k, int movingSlot,
+                                List<String> fixed, List<String> moving,
+                                List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<String> names = k < movingSlot ? fixed : moving;
+        for (String name : names) {
+            boolean used = false;
+            for (int i = 1; i < k; i++) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                arrange(order, k + 1, movingSlot, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Test candidates LO .. HI-1 of rotor order ORDER on the calling
+     *  thread, giving matches to RESULTS. */
+    private void run(Consumer<String> results, String[] order,
+                     long lo, long hi) {
+        Machine m = _machines.get();
+        m.insertRotors(order);
+        int n = m.numRotors();
+        int size = m.alphabet().size();
+        int[] digits = new int[n - 1 + _ringSlots.length];
+        long rest = lo;
+        for (int d = digits.length - 1; d >= 0; d--) {
+            digits[d] = (int) (rest % size);
+            rest /= size;
+        }
+        int[] settings = new int[n];
+        int[] rings = new int[n];
+        for (long c = lo; c < hi; c++) {
+            System.arraycopy(digits, 0, settings, 1, n - 1);
+            for (int j = 0; j < _ringSlots.length; j++) {
+                rings[_ringSlots[j]] = digits[n - 1 + j];
+            }
+            m.setRotors(settings, rings);
+            if (matches(m)) {
+                report(results, order, settings, rings);
+            }
+            for (int d = digits.length - 1; d >= 0; d--) {
+                digits[d] += 1;
+                if (digits[d] < size) {
+                    break;
+                }
+                digits[d] = 0;
+            }
+        }
+        _tried.add(hi - lo);
+    }
+
+    /** Return true iff M, as set up, decrypts my ciphertext to my crib,
+     *  checking only as far as the first mismatch. */
+    private boolean matches(Machine m) {
+        m.seek(_offset);
+        for (int i = 0; i < _crib.length; i++) {
+            if (m.convert(_cipher[i]) != _crib[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Give RESULTS the settings line for rotor order ORDER with rotors
+     *  at internal SETTINGS and RINGS. */
+    private void report(Consumer<String> results, String[] order,
+                        int[] settings, int[] rings) {
+        String line =
+            settingsLine(_template.alphabet(), order, settings, rings);
+        _found.increment();
+        synchronized (this) {
+            results.accept(line);
+        }
+    }
+
+    /** Return the settings line, without a plugboard, for rotor order
+     *  ORDER with rotors at internal SETTINGS and RINGS, as given by
+     *  Rotor.setting() and Rotor.ringSetting(), in ALPHABET. */
+    static String settingsLine(Alphabet alphabet, String[] order,
+                               int[] settings, int[] rings) {
+        int size = alphabet.size();
+        StringBuilder line = new StringBuilder("*");
+        for (String name : order) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < order.length; i++) {
+            line.append(alphabet.toChar((settings[i] + rings[i]) % size));
+        }
+        line.append(' ');
+        for (int i = 1; i < order.length; i++) {
+            line.append(alphabet.toChar(rings[i]));
+        }
+        return line.toString();
+    }
+
+    /** The candidates of rotor orders FIRST .. LAST-1, or when those are
+     *  one order, its candidates LO .. HI-1, split in halves until small
+     *  enough for one thread to test. */
+    private class Part extends RecursiveAction {
+
+        /** Candidates of orders FIRST .. LAST-1, of which LO .. HI-1 if
+         *  just one, whose matches go to RESULTS. */
+        Part(Consumer<String> results, int first, int last, long lo,
+             long hi) {
+            _results = results;
+            _first = first;
+            _last = last;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_last - _first > 1) {
+                int mid = (_first + _last) >>> 1;
+                invokeAll(new Part(_results, _first, mid, _lo, _hi),
+                          new Part(_results, mid, _last, _lo, _hi));
+            } else if (_first == _last) {
+                return;
+            } else if (_hi - _lo > LEAF) {
+                long mid = _lo + (_hi - _lo) / 2;
+                invokeAll(new Part(_results, _first, _last, _lo, mid),
+                          new Part(_results, _first, _last, mid, _hi));
+            } else {
+                run(_results, _orders.get(_first), _lo, _hi);
+            }
+        }
+
+        /** Destination of matches. */
+        private final Consumer<String> _results;
+
+        /** Range of rotor orders. */
+        private final int _first, _last;
+
+        /** Range of candidates. */
+        private final long _lo, _hi;
+    }
+
+    /** Most candidates tested as one task. */
+    static final int LEAF = 1 << 12;
+
+    /** The machine all others are replicas of. */
+    private final Machine _template;
+
+    /** Indices of the ciphertext and crib characters, from the
+     *  offset. */
+    private final int[] _cipher, _crib;
+
+    /** Characters of the ciphertext before the crib. */
+    private final long _offset;
+
+    /** Every rotor order tried. */
+    private final List<String[]> _orders;
+
+    /** Slots whose rings are searched. */
+    private final int[] _ringSlots;
+
+    /** Number of candidates for each rotor order. */
+    private final long _perOrder;
+
+    /** Counts of candidates tried and matches found. */
+    private final LongAdder _tried, _found;
+
+    /** Each thread's machine. */
+    private final ThreadLocal<Machine> _machines;
+}
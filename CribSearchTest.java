@@ -0,0 +1,72 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribSearch class.
+ *  @author Brian Chiang
+ */
+public class CribSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return MSG converted by a smallMachine() set up by SETTINGS. */
+    private static String convert(String settings, String msg) {
+        Machine mach = smallMachine();
+        Main.setUp(mach, settings);
+        return mach.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkFindsSettings() {
+        String settings = "* R F M3 M1 CBE AAD";
+        String plain = "ABCDEFGHHGFEDCBAABCD";
+        String cipher = convert(settings, plain);
+        CribSearch search = new CribSearch(smallMachine(), cipher,
+                                           plain.substring(5, 14), 5);
+        List<String> found = Collections.synchronizedList(new ArrayList<>());
+        search.search(4, found::add);
+        assertTrue(found.toString(), found.contains(settings));
+        for (String line : found) {
+            assertEquals(line, plain.substring(5, 14),
+                         convert(line, cipher).substring(5, 14));
+        }
+        assertEquals(6, search.orders());
+        assertEquals(8 * 8 * 8 * 8, search.candidatesPerOrder());
+        assertEquals(search.orders() * search.candidatesPerOrder(),
+                     search.tried());
+        assertEquals(found.size(), search.found());
+    }
+
+    @Test
+    public void checkRingsFolded() {
+        String settings = "* R F M2 M3 DAF ACG";
+        String plain = "HHHHHHHHHHHHHHHHHHHHHHHHHHHH";
+        String cipher = convert(settings, plain);
+        CribSearch search = new CribSearch(smallMachine(), cipher,
+                                           plain.substring(12), 12);
+        List<String> found = Collections.synchronizedList(new ArrayList<>());
+        search.search(2, found::add);
+        assertTrue(found.toString(),
+                   found.contains("* R F M2 M3 DGF AAG"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCribOutside() {
+        new CribSearch(smallMachine(), "ABCD", "ABC", 2);
+    }
+}
@@ -12,4 +12,9 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    /** A non-moving rotor with WIRING. */
+    FixedRotor(RotorWiring wiring) {
+        super(wiring);
+    }
 }
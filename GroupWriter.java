@@ -0,0 +1,242 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The output stage for converted messages.  Writes the non-blank
+ *  characters of each message line in groups of five separated by single
+ *  blanks (the last group of a line may have fewer characters), encoding
+ *  them straight into a large reusable byte buffer that is written out
+ *  only when it fills or on flush().  A line may be written in several
+ *  pieces.
+ *  @author Brian Chiang
+ */
+class GroupWriter {
+
+    /** A GroupWriter writing to OUT in CHARSET. */
+    GroupWriter(OutputStream out, Charset charset) {
+        _out = out;
+        _charset = charset;
+        _buffer = new byte[BUFFER_SIZE];
+        _mark = -1;
+        _encoder = charset.newEncoder();
+        _one = CharBuffer.allocate(1);
+        _encoded = ByteBuffer.allocate((int) Math.ceil(
+                _encoder.maxBytesPerChar()));
+        _newline = System.lineSeparator().getBytes(charset);
+        byte[] ascii = new byte[ASCII];
+        for (int c = 0; c < ASCII; c++) {
+            ascii[c] = (byte) c;
+        }
+        _ascii = new String(ascii, 0, ASCII, charset)
+            .equals(asciiString());
+    }
+
+    /** A GroupWriter writing to OUT in the default character set. */
+    GroupWriter(OutputStream out) {
+        this(out, Charset.defaultCharset());
+    }
+
+    /** Write the non-blank characters of MSG[START .. START+LEN-1],
+     *  continuing the groups of the current line. */
+    void write(char[] msg, int start, int len) {
+        for (int i = start; i < start + len; i++) {
+            char c = msg[i];
+            if (!Character.isWhitespace(c)) {
+                letter(c);
+            }
+        }
+    }
+
+    /** Write the non-blank character C, continuing the groups of the
+     *  current line. */
+    void letter(char c) {
+        if (_letters == GROUP) {
+            put(' ');
+            _letters = 0;
+        }
+        put(c);
+        _letters += 1;
+    }
+
+    /** Make sure that the next LEN characters given to letter go into my
+     *  buffer without any of it being written out, enlarging it if
+     *  need be, so that mark and reset may be used around them. */
+    void reserve(int len) {
+        long bytes = (len + len / GROUP + 1L) * _encoded.capacity();
+        if (_count + bytes > _buffer.length) {
+            drain();
+            if (bytes > _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, (int) bytes);
+            }
+        }
+    }
+
+    /** Remember the current point of my output, so that reset can
+     *  discard what follows it.  The mark is lost when my buffer is
+     *  written out. */
+    void mark() {
+        _mark = _count;
+        _markLetters = _letters;
+    }
+
+    /** Discard everything written since the last mark. */
+    void reset() {
+        if (_mark < 0) {
+            throw error("output written since mark");
+        }
+        _count = _mark;
+        _letters = _markLetters;
+    }
+
+    /** Continue the current line, whose first LETTERS non-blank
+     *  characters have been written by another GroupWriter. */
+    void resumeLine(long letters) {
+        _letters = letters == 0 ? 0 : (int) ((letters - 1) % GROUP) + 1;
+    }
+
+    /** Write LEN bytes of BYTES starting at OFF, already encoded in my
+     *  character set, as they are. */
+    void writeEncoded(byte[] bytes, int off, int len) {
+        if (_count + len > _buffer.length) {
+            drain();
+            if (len > _buffer.length) {
+                try {
+                    _out.write(bytes, off, len);
+                } catch (IOException excp) {
+                    throw error("could not write output: %s",
+                                excp.getMessage());
+                }
+                return;
+            }
+        }
+        System.arraycopy(bytes, off, _buffer, _count, len);
+        _count += len;
+    }
+
+    /** Return the character set I write. */
+    Charset charset() {
+        return _charset;
+    }
+
+    /** Write TEXT as it is, without grouping. */
+    void writeText(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            put(text.charAt(i));
+        }
+    }
+
+    /** End the current line. */
+    void endLine() {
+        if (_count + _newline.length > _buffer.length) {
+            drain();
+        }
+        System.arraycopy(_newline, 0, _buffer, _count, _newline.length);
+        _count += _newline.length;
+        _letters = 0;
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Append the encoding of C to _buffer. */
+    private void put(char c) {
+        if (_count + _encoded.capacity() > _buffer.length) {
+            drain();
+        }
+        if (c < ASCII && _ascii) {
+            _buffer[_count] = (byte) c;
+            _count += 1;
+            return;
+        }
+        _one.clear();
+        _one.put(c).flip();
+        _encoded.clear();
+        _encoder.reset();
+        _encoder.encode(_one, _encoded, true);
+        _encoder.flush(_encoded);
+        _encoded.flip();
+        int n = _encoded.remaining();
+        _encoded.get(_buffer, _count, n);
+        _count += n;
+    }
+
+    /** Write _buffer to _out and empty it. */
+    private void drain() {
+        try {
+            _out.write(_buffer, 0, _count);
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _count = 0;
+        _mark = -1;
+    }
+
+    /** Return the characters 0 .. ASCII-1 as a String. */
+    private static String asciiString() {
+        char[] chars = new char[ASCII];
+        for (int c = 0; c < ASCII; c++) {
+            chars[c] = (char) c;
+        }
+        return new String(chars);
+    }
+
+    /** Number of characters in a group. */
+    static final int GROUP = 5;
+
+    /** Size of the output buffer in bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Characters below this are written as one byte each when the
+     *  character set allows. */
+    private static final int ASCII = 128;
+
+    /** Destination of my output. */
+    private final OutputStream _out;
+
+    /** Character set of my output. */
+    private final Charset _charset;
+
+    /** Bytes not yet written to _out. */
+    private byte[] _buffer;
+
+    /** Number of bytes in _buffer. */
+    private int _count;
+
+    /** Number of characters in the last group of the current line. */
+    private int _letters;
+
+    /** Values of _count and _letters at the last mark, or -1 for
+     *  _mark if there is none. */
+    private int _mark, _markLetters;
+
+    /** Encoder for characters outside the ASCII range. */
+    private final CharsetEncoder _encoder;
+
+    /** Holds one character to be encoded. */
+    private final CharBuffer _one;
+
+    /** Holds the encoding of one character. */
+    private final ByteBuffer _encoded;
+
+    /** Encoding of the line separator. */
+    private final byte[] _newline;
+
+    /** True iff my character set encodes each ASCII character as the
+     *  byte with the same value. */
+    private final boolean _ascii;
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Brian Chiang
+ */
+public class GroupWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGroups() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(bytes, StandardCharsets.UTF_8);
+        String nl = System.lineSeparator();
+        out.write("ABC DE".toCharArray(), 0, 6);
+        out.endLine();
+        out.endLine();
+        out.write("ABCDE FGHIJ".toCharArray(), 0, 11);
+        out.write("KL MNOP".toCharArray(), 3, 4);
+        out.endLine();
+        out.write("A\u00e9\u4e00BCD".toCharArray(), 0, 6);
+        out.endLine();
+        out.flush();
+        assertEquals("ABCDE" + nl + nl + "ABCDE FGHIJ MNOP" + nl
+                     + "A\u00e9\u4e00BC D" + nl,
+                     new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkLargeOutput() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(bytes, StandardCharsets.UTF_8);
+        char[] msg = new char[3 * GroupWriter.BUFFER_SIZE];
+        Arrays.fill(msg, 'Q');
+        out.write(msg, 0, msg.length);
+        out.flush();
+        assertEquals(msg.length + (msg.length - 1) / 5, bytes.size());
+    }
+
+    @Test
+    public void checkResumeLine() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(bytes, StandardCharsets.UTF_8);
+        String nl = System.lineSeparator();
+        out.write("ABCDEFG".toCharArray(), 0, 7);
+        ByteArrayOutputStream rest = new ByteArrayOutputStream();
+        GroupWriter other = new GroupWriter(rest, out.charset());
+        other.resumeLine(7);
+        other.write("HIJKL".toCharArray(), 0, 5);
+        other.endLine();
+        other.resumeLine(10);
+        other.write("K".toCharArray(), 0, 1);
+        other.flush();
+        out.writeEncoded(rest.toByteArray(), 0, rest.size());
+        out.flush();
+        assertEquals("ABCDE FGHIJ KL" + nl + " K",
+                     new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkMarkReset() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(bytes, StandardCharsets.UTF_8);
+        String nl = System.lineSeparator();
+        out.write("ABCDEFG".toCharArray(), 0, 7);
+        char[] big = new char[2 * GroupWriter.BUFFER_SIZE];
+        Arrays.fill(big, 'Q');
+        out.reserve(big.length);
+        out.mark();
+        int written = bytes.size();
+        out.write(big, 0, big.length);
+        assertEquals(written, bytes.size());
+        out.reset();
+        out.letter('H');
+        out.endLine();
+        out.flush();
+        assertEquals("ABCDE FGH" + nl,
+                     new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+}
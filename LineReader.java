@@ -0,0 +1,178 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A source of lines of text that reads its input in large blocks and
+ *  hands each line to its caller as a range of a reusable buffer, with no
+ *  allocation per line.  A line longer than the buffer is delivered in
+ *  several pieces, so memory use does not depend on the input.  Lines end
+ *  at '\n', '\r' or "\r\n".
+ *  @author Brian Chiang
+ */
+class LineReader {
+
+    /** A LineReader for IN whose buffer holds SIZE characters. */
+    LineReader(Reader in, int size) {
+        _in = in;
+        _buffer = new char[size];
+        _atLineStart = true;
+    }
+
+    /** A LineReader for IN with a buffer of the default size. */
+    LineReader(Reader in) {
+        this(in, BLOCK_SIZE);
+    }
+
+    /** Advance to the next line or piece of a line, returning false if
+     *  the input is exhausted.  The characters of the piece are
+     *  buffer()[start() .. start()+length()-1], not including the line
+     *  terminator, and may be modified by the caller. */
+    boolean next() {
+        while (true) {
+            if (_skipNewline && _pos < _limit) {
+                if (_buffer[_pos] == '\n') {
+                    _pos += 1;
+                }
+                _skipNewline = false;
+            }
+            for (int i = Math.max(_pos, _scanned); i < _limit; i++) {
+                char c = _buffer[i];
+                if (c == '\n' || c == '\r') {
+                    piece(_pos, i, true);
+                    _pos = i + 1;
+                    _skipNewline = c == '\r';
+                    return true;
+                }
+            }
+            _scanned = _limit;
+            if (_eof) {
+                if (_pos < _limit || !_atLineStart) {
+                    piece(_pos, _limit, true);
+                    _pos = _limit;
+                    return true;
+                }
+                return false;
+            }
+            if (_pos == 0 && _limit == _buffer.length) {
+                piece(0, _limit, false);
+                _pos = _limit;
+                return true;
+            }
+            fill();
+        }
+    }
+
+    /** Return true iff next() can deliver another piece, or report the
+     *  end of input, without waiting for more input. */
+    boolean ready() {
+        if (_eof) {
+            return true;
+        }
+        int from = _pos;
+        if (_skipNewline && _pos < _limit && _buffer[_pos] == '\n') {
+            from += 1;
+        }
+        for (int i = Math.max(from, _scanned); i < _limit; i++) {
+            if (_buffer[i] == '\n' || _buffer[i] == '\r') {
+                return true;
+            }
+        }
+        try {
+            return (_pos == 0 && _limit == _buffer.length) || _in.ready();
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the buffer holding the current piece. */
+    char[] buffer() {
+        return _buffer;
+    }
+
+    /** Return the index of the first character of the current piece. */
+    int start() {
+        return _start;
+    }
+
+    /** Return the number of characters in the current piece. */
+    int length() {
+        return _length;
+    }
+
+    /** Return true iff the current piece begins a line. */
+    boolean lineStart() {
+        return _lineStart;
+    }
+
+    /** Return true iff the current piece ends a line. */
+    boolean lineEnd() {
+        return _lineEnd;
+    }
+
+    /** Make the current piece _buffer[FROM .. TO-1], ending its line iff
+     *  END. */
+    private void piece(int from, int to, boolean end) {
+        _start = from;
+        _length = to - from;
+        _lineStart = _atLineStart;
+        _lineEnd = end;
+        _atLineStart = end;
+    }
+
+    /** Move the unread characters to the front of _buffer and read as
+     *  many more as are available. */
+    private void fill() {
+        int unread = _limit - _pos;
+        System.arraycopy(_buffer, _pos, _buffer, 0, unread);
+        _scanned -= _pos;
+        _pos = 0;
+        _limit = unread;
+        try {
+            int n = _in.read(_buffer, _limit, _buffer.length - _limit);
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _limit += n;
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Default size of the buffer. */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /** Source of characters. */
+    private final Reader _in;
+
+    /** Characters read but not yet delivered, and the current piece. */
+    private final char[] _buffer;
+
+    /** Index of the first character in _buffer not yet delivered. */
+    private int _pos;
+
+    /** Number of valid characters in _buffer. */
+    private int _limit;
+
+    /** Characters of _buffer before this index contain no line
+     *  terminator after _pos. */
+    private int _scanned;
+
+    /** True iff _in is exhausted. */
+    private boolean _eof;
+
+    /** True iff a '\n' that follows a '\r' is to be skipped. */
+    private boolean _skipNewline;
+
+    /** True iff the next piece begins a line. */
+    private boolean _atLineStart;
+
+    /** Start and length of the current piece. */
+    private int _start, _length;
+
+    /** True iff the current piece begins or ends a line. */
+    private boolean _lineStart, _lineEnd;
+}
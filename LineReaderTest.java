@@ -0,0 +1,65 @@
+package enigma;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Brian Chiang
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the lines of INPUT as read by a LineReader with a buffer of
+     *  SIZE characters, joining the pieces of each line. */
+    private List<String> lines(String input, int size) {
+        LineReader reader = new LineReader(new StringReader(input), size);
+        List<String> result = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        boolean started = false;
+        while (reader.next()) {
+            assertEquals(!started, reader.lineStart());
+            line.append(reader.buffer(), reader.start(), reader.length());
+            started = !reader.lineEnd();
+            if (reader.lineEnd()) {
+                result.add(line.toString());
+                line.setLength(0);
+            }
+        }
+        assertFalse(started);
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTerminators() {
+        assertEquals(Arrays.asList("AB", "", "C", "D"),
+                     lines("AB\n\nC\r\nD", 64));
+        assertEquals(Arrays.asList("AB", "C"), lines("AB\rC\n", 64));
+        assertEquals(Arrays.asList(), lines("", 64));
+    }
+
+    @Test
+    public void checkLongLines() {
+        String longLine = "";
+        for (int i = 0; i < 10; i++) {
+            longLine += "ABCDEFGHIJ";
+        }
+        assertEquals(Arrays.asList("X", longLine, "Y", longLine),
+                     lines("X\n" + longLine + "\r\nY\n" + longLine, 8));
+        assertEquals(Arrays.asList("AB", "CD"), lines("AB\r\nCD", 3));
+    }
+
+}
@@ -1,7 +1,12 @@
 package enigma;
 
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import static enigma.EnigmaException.*;
 
@@ -12,9 +17,20 @@ class Machine {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     *  available rotors. */
+     *  available rotors.  I move copies of them, never ALLROTORS
+     *  themselves. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorLibrary());
+        for (Rotor r : allRotors) {
+            _library.add(r);
+        }
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  of LIBRARY, built as they are first inserted. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorLibrary library) {
         if (numRotors <= 1) {
             throw error("Not enough rotors.");
         }
@@ -24,10 +40,73 @@ class Machine {
         _alphabet = alpha;
         _numRotors = numRotors;
         _numPawls = pawls;
-        _allRotors = allRotors.toArray();
-        _rotorMap = new HashMap<>();
+        _library = library;
+        _own = new HashMap<>();
+        _arrangements = new HashMap<>();
         _rotors = new Rotor[numRotors];
+        _fixed = new int[numRotors];
         _plugboard = null;
+        _compiled = true;
+        _key = -1;
+    }
+
+    /** A new Enigma machine with the same rotors, settings and plugboard
+     *  as M, whose rotors move independently of those of M. */
+    private Machine(Machine m) {
+        _alphabet = m._alphabet;
+        _numRotors = m._numRotors;
+        _numPawls = m._numPawls;
+        _library = m._library;
+        _own = new HashMap<>();
+        _arrangements = new HashMap<>();
+        _arrangement = null;
+        _rotors = new Rotor[_numRotors];
+        for (int i = 0; i < _numRotors; i++) {
+            _rotors[i] = m._rotors[i].copy();
+        }
+        _plugboard = m._plugboard;
+        _rotating = m._rotating;
+        _seekable = m._seekable;
+        _compiled = m._compiled;
+        _key = -1;
+        _fixed = new int[_numRotors];
+    }
+
+    /** Return a new machine with my alphabet, slots, pawls and library
+     *  of rotors, with no rotors inserted.  It may be set up and used on
+     *  another thread independently of me: the two share only immutable
+     *  wirings. */
+    Machine replicate() {
+        Machine m = new Machine(_alphabet, _numRotors, _numPawls, _library);
+        m._compiled = _compiled;
+        return m;
+    }
+
+    /** Return to the state of a machine fresh from replicate(), except
+     *  for my rotor slots: no plugboard, and every rotor's ring at 0, so
+     *  that the next settings line leaves nothing from earlier ones. */
+    void reset() {
+        char first = _alphabet.toChar(0);
+        for (Rotor r : _own.values()) {
+            r.setRing(first);
+        }
+        if (_plugboard != null) {
+            _plugboard = null;
+            invalidate();
+        } else {
+            resettle();
+        }
+    }
+
+    /** Return the prototypes of all the rotors available to me, in the
+     *  order given to my constructor, building any not yet built. */
+    List<Rotor> availableRotors() {
+        return _library.rotors();
+    }
+
+    /** Return the library of rotors available to me. */
+    RotorLibrary library() {
+        return _library;
     }
 
     /** Return the number of rotor slots I have. */
@@ -53,48 +132,78 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  Each valid
+     *  order of rotor names is checked only the first time it is used;
+     *  after that, inserting it again just fills my slots. */
     void insertRotors(String[] rotors) {
-        _rotorMap = new HashMap<>();
-        _rotors = new Rotor[_numRotors];
         int len = rotors.length;
         if (len != numRotors()) {
             throw error("%2$d slots can't fit %1$d ROTORS ", len, numRotors());
         }
+        Arrangement arr = _arrangement;
+        if (arr == null || !Arrays.equals(rotors, arr._names)) {
+            arr = _arrangements.get(Arrays.asList(rotors));
+            if (arr == null) {
+                arr = arrange(rotors);
+                if (_arrangements.size() >= MAX_ARRANGEMENTS) {
+                    _arrangements.clear();
+                }
+                _arrangements.put(Arrays.asList(arr._names), arr);
+            }
+        }
+        System.arraycopy(arr._rotors, 0, _rotors, 0, len);
+        _rotating = arr._rotating;
+        _seekable = arr._seekable;
+        if (arr != _arrangement) {
+            _arrangement = arr;
+            compile();
+        } else {
+            resettle();
+        }
+    }
+
+    /** Return the arrangement of the rotors named ROTORS in my slots,
+     *  checking that it is valid. */
+    private Arrangement arrange(String[] rotors) {
+        Rotor[] slots = new Rotor[rotors.length];
         int moving = numPawls();
         for (int i = rotors.length - 1; i > -1; i--) {
-            for (int j = 0; j < _allRotors.length; j++) {
-                Rotor r = (Rotor) _allRotors[j];
-                String name = rotors[i];
-                if (r.name().equals(name)) {
-                    if (_rotorMap.containsKey(name)) {
-                        throw error("%s ROTOR is used twice!", name);
-                    }
-                    _rotorMap.put(name, r);
-                    _rotors[i] = r;
-                    if (r.rotates()) {
-                        moving--;
-                        if (moving == 0) {
-                            if (i != numRotors() - numPawls()) {
-                                throw error("Moving rotors need PAWLS");
-                            }
-                        }
-                    }
-                    if (moving < 0) {
-                        throw error("Too many moving rotors not enough pawls");
-                    }
-                    if (i == 0 && !r.reflecting()) {
-                        throw error("Leftmost rotor should be a reflector");
-                    }
-                    if (i != 0 && r.reflecting()) {
-                        throw error("Reflectors only in first slot");
+            String name = rotors[i];
+            Rotor r = _own.get(name);
+            if (r == null) {
+                Rotor prototype = _library.get(name);
+                if (prototype == null) {
+                    throw error("Rotor name %s not found in _ALLROTORS",
+                                name);
+                }
+                r = prototype.copy();
+                _own.put(name, r);
+            }
+            for (int j = i + 1; j < rotors.length; j++) {
+                if (slots[j] == r) {
+                    throw error("%s ROTOR is used twice!", name);
+                }
+            }
+            slots[i] = r;
+            if (r.rotates()) {
+                moving--;
+                if (moving == 0) {
+                    if (i != numRotors() - numPawls()) {
+                        throw error("Moving rotors need PAWLS");
                     }
                 }
             }
-            if (!_rotorMap.containsKey(rotors[i])) {
-                throw error("Rotor name %s not found in _ALLROTORS", rotors[i]);
+            if (moving < 0) {
+                throw error("Too many moving rotors not enough pawls");
+            }
+            if (i == 0 && !r.reflecting()) {
+                throw error("Leftmost rotor should be a reflector");
+            }
+            if (i != 0 && r.reflecting()) {
+                throw error("Reflectors only in first slot");
             }
         }
+        return new Arrangement(rotors.clone(), slots, _alphabet.size());
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -112,6 +221,26 @@ class Machine {
             }
             r.set(sett);
         }
+        resettle();
+    }
+
+    /** Set each of my rotors but the reflector to the setting at the
+     *  same index of SETTINGS, as given by Rotor.setting(). */
+    void setRotors(int[] settings) {
+        for (int i = 1; i < numRotors(); i++) {
+            _rotors[i].set(settings[i]);
+        }
+        resettle();
+    }
+
+    /** Set each of my rotors but the reflector to the setting and ring
+     *  at the same index of SETTINGS and RINGS, as given by
+     *  Rotor.setting() and Rotor.ringSetting(). */
+    void setRotors(int[] settings, int[] rings) {
+        for (int i = 1; i < numRotors(); i++) {
+            _rotors[i].restore(settings[i], rings[i]);
+        }
+        resettle();
     }
 
     /**Set my rotor's rings according to RINGSET. */
@@ -127,6 +256,32 @@ class Machine {
             }
             r.setRing(sett);
         }
+        resettle();
+    }
+
+    /** Return a record of my rotors, their settings and rings, and my
+     *  plugboard, from which restore sets up any machine sharing my
+     *  library exactly as I am now.  I must have rotors inserted. */
+    State state() {
+        int[] settings = new int[_numRotors];
+        int[] rings = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i++) {
+            settings[i] = _rotors[i].setting();
+            rings[i] = _rotors[i].ringSetting();
+        }
+        return new State(_arrangement._names, settings, rings, _plugboard,
+                         _seekable);
+    }
+
+    /** Set my rotors, their settings and rings, and my plugboard as
+     *  recorded in STATE, which came from a machine sharing my
+     *  library. */
+    void restore(State state) {
+        insertRotors(state._names);
+        for (int i = 1; i < _numRotors; i++) {
+            _rotors[i].restore(state._settings[i], state._rings[i]);
+        }
+        setPlugboard(state._plugboard);
     }
 
     /** Return the current plugboard's permutation. */
@@ -136,14 +291,141 @@ class Machine {
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
-        _plugboard = null;
-        _plugboard = plugboard;
+        if (plugboard != _plugboard) {
+            _plugboard = plugboard;
+            invalidate();
+        } else {
+            resettle();
+        }
+    }
+
+    /** Use the memoized substitution tables iff COMPILED; otherwise every
+     *  character goes through the rotors one by one, and no memory is
+     *  spent on tables.  Compiled mode is the default. */
+    void setCompiled(boolean compiled) {
+        _compiled = compiled;
+        if (!compiled) {
+            dropSubstitutions();
+        }
+    }
+
+    /** Free the memory held by my memoized substitutions.  They are
+     *  made again, as they are needed, by later conversions. */
+    void dropSubstitutions() {
+        _cache = null;
+        forgetPosition();
+    }
+
+    /** Prepare for my current rotors: keep _cache, cleared, if it fits
+     *  them, and otherwise drop it, to be made again by the first
+     *  conversion that needs it. */
+    private void compile() {
+        forgetPosition();
+        if (_cache != null && _compiled
+            && _cache.positions() == _arrangement._positions) {
+            _cache.clear();
+            recordFixed();
+        } else {
+            _cache = null;
+        }
+    }
+
+    /** Return _cache, making it if it is missing: a flat table for every
+     *  position of the rotating rotors if that is small enough, and
+     *  otherwise a bounded cache of recently used positions.  Return
+     *  null if there can be no cache, because positions cannot be
+     *  numbered by a long. */
+    private SubstitutionCache memo() {
+        if (_cache == null && _arrangement != null
+            && _arrangement._positions >= 0) {
+            _cache = new SubstitutionCache(_alphabet.size(),
+                                           _arrangement._positions);
+            recordFixed();
+        }
+        return _cache;
+    }
+
+    /** Forget any memoized substitutions, which no longer apply. */
+    private void invalidate() {
+        forgetPosition();
+        if (_cache != null) {
+            _cache.clear();
+            recordFixed();
+        }
+    }
+
+    /** Forget what step and position know about my rotors, whose
+     *  settings or rings have been changed other than by stepping.  The
+     *  memoized substitutions depend only on my rotor order, plugboard
+     *  and rotor settings, and their key covers the settings of every
+     *  rotor that moves, so they still apply unless a rotor that does
+     *  not rotate now has a different setting. */
+    private void resettle() {
+        forgetPosition();
+        if (_cache == null) {
+            return;
+        }
+        for (int i = 0; i < _numRotors; i++) {
+            Rotor r = _rotors[i];
+            if (r != null && !r.rotates() && r.setting() != _fixed[i]) {
+                invalidate();
+                return;
+            }
+        }
+    }
+
+    /** Record the settings of my rotors as those _cache was filled
+     *  under. */
+    private void recordFixed() {
+        for (int i = 0; i < _numRotors; i++) {
+            _fixed[i] = _rotors[i] == null ? -1 : _rotors[i].setting();
+        }
+    }
+
+    /** Return the key identifying the current settings of my rotating
+     *  rotors in _cache. */
+    private long position() {
+        if (_key < 0) {
+            long key = 0;
+            for (int i : _rotating) {
+                key = key * _alphabet.size() + _rotors[i].setting();
+            }
+            _key = key;
+        }
+        return _key;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        step();
+        if (_compiled) {
+            SubstitutionCache cache = _cache != null ? _cache : memo();
+            if (cache != null) {
+                return cache.convert(position(), c, this);
+            }
+        }
+        return substitute(c);
+    }
+
+    /** Advance my rotors as for one key press.  Between carries, only
+     *  the fast rotor moves: after each general step, the number of
+     *  key presses until the next carry is worked out from the notch
+     *  tables, and those presses just advance the fast rotor, keeping
+     *  the cache key up to date. */
+    private void step() {
+        if (_quiet > 0) {
+            _quiet -= 1;
+            Rotor fast = _rotors[_rotors.length - 1];
+            int posn = fast.setting();
+            int next = posn + 1 == _alphabet.size() ? 0 : posn + 1;
+            fast.set(next);
+            if (_key >= 0) {
+                _key += next - posn;
+            }
+            return;
+        }
         for (int i = 1; i < _rotors.length; i++) {
             Rotor r = _rotors[i];
             if (i == _rotors.length - 1) {
@@ -171,6 +453,147 @@ class Machine {
         for (Rotor r: _rotors) {
             r.set(false);
         }
+        _key = -1;
+        _quiet = quietSteps();
+    }
+
+    /** Return the number of key presses, starting with the next, that
+     *  will move only my fast rotor. */
+    private int quietSteps() {
+        int n = _rotors.length;
+        Rotor fast = _rotors[n - 1];
+        if (!fast.rotates()) {
+            return 0;
+        }
+        for (int i = 1; i < n - 1; i++) {
+            if (_rotors[i - 1].rotates() && _rotors[i].atNotch()) {
+                return 0;
+            }
+        }
+        return _rotors[n - 2].rotates() ? fast.stepsToNotch()
+            : Integer.MAX_VALUE;
+    }
+
+    /** Forget what step and position know about my rotors' settings,
+     *  which have been changed some other way. */
+    private void forgetPosition() {
+        _quiet = 0;
+        _key = -1;
+    }
+
+    /** Advance the machine exactly as STEPS calls to convert would,
+     *  without converting anything.  Unless some rotating rotor has
+     *  notches at consecutive settings, this takes time proportional to
+     *  the square of the number of rotors rather than to STEPS.
+     *
+     *  The count of moves of each rotor follows from the moves of the
+     *  rotor to its right.  A rotor whose left neighbor rotates never
+     *  rests at a notch: arriving at one, it moves on at the next key
+     *  press, kicking its neighbor.  So each kick it receives moves it
+     *  once, plus once more if it lands on a notch, unless that landing
+     *  was on the last key press.  Deciding the last case needs the
+     *  state of the rotor to the right one key press earlier, so the
+     *  counts are computed for each of the last few step counts. */
+    void seek(long steps) {
+        if (steps < 0) {
+            throw error("Cannot seek backwards");
+        }
+        int n = _rotors.length;
+        if (!_seekable || steps <= n + 1) {
+            for (long t = 0; t < steps; t++) {
+                step();
+            }
+            return;
+        }
+        int size = _alphabet.size();
+        int last = n + 2;
+        long[] moves = new long[last];
+        long[] kicks = new long[last];
+        boolean[] lastKick = new boolean[last];
+        boolean[] atNotch = new boolean[last];
+        Rotor fast = _rotors[n - 1];
+        int posn = fast.setting();
+        boolean firstKick = fast.atNotch(posn);
+        for (int j = 0; j < last; j++) {
+            long t = steps - j;
+            moves[j] = fast.rotates() ? t : 0;
+            kicks[j] = fast.notchesFrom(posn, t);
+            lastKick[j] = fast.atNotch(posn + (int) ((t - 1) % size));
+        }
+        fast.set(fast.setting() + (int) (moves[0] % size));
+        for (int i = n - 2; i > 0; i--) {
+            Rotor r = _rotors[i];
+            posn = r.setting();
+            if (!r.rotates() || !_rotors[i - 1].rotates()) {
+                if (r.rotates()) {
+                    r.set(posn + (int) (kicks[0] % size));
+                }
+                Arrays.fill(kicks, 0);
+                Arrays.fill(lastKick, false);
+                firstKick = false;
+                continue;
+            }
+            boolean init = r.atNotch(posn);
+            int start = init ? posn + 1 : posn;
+            for (int j = 0; j < last - 1; j++) {
+                long k = init && firstKick ? kicks[j] - 1 : kicks[j];
+                long m = init ? 1 : 0;
+                long out = m;
+                atNotch[j] = false;
+                if (k > 0) {
+                    long d = kickMoves(r, start, k - 1);
+                    int landing = start + (int) (d % size) + 1;
+                    if (lastKick[j] && r.atNotch(landing)) {
+                        m += d + 1;
+                        out += d - (k - 1);
+                        atNotch[j] = true;
+                    } else {
+                        d = kickMoves(r, start, k);
+                        m += d;
+                        out += d - k;
+                    }
+                }
+                moves[j] = m;
+                kicks[j] = out;
+            }
+            for (int j = 0; j < last - 1; j++) {
+                lastKick[j] = atNotch[j + 1];
+            }
+            firstKick = init;
+            r.set(posn + (int) (moves[0] % size));
+        }
+        forgetPosition();
+    }
+
+    /** Returns the number of moves that R, currently at setting POSN
+     *  and not about to move, makes to absorb KICKS kicks from its right
+     *  neighbor, given that it moves again whenever it lands on a notch.
+     *  Requires that R have no adjacent notches. */
+    private long kickMoves(Rotor r, int posn, long kicks) {
+        if (kicks == 0) {
+            return 0;
+        }
+        int size = _alphabet.size();
+        long free = size - r.notchesFrom(0, size);
+        long full = (kicks - 1) / free;
+        long rest = (kicks - 1) % free + 1;
+        int lo = 1, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mid - r.notchesFrom(posn + 1, mid) >= rest) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return full * size + lo;
+    }
+
+    /** Returns the result of converting the input character C through
+     *  the plugboard, rotors and reflector at their current settings,
+     *  without advancing the machine. This is the reference for the
+     *  memoized substitutions. */
+    int substitute(int c) {
         int result = c;
         if (_plugboard != null) {
             result = _plugboard.permute(c);
@@ -190,19 +613,241 @@ class Machine {
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly. Whitespace not in my alphabet is passed
+     *  through unchanged. */
     String convert(String msg) {
         char[] msgA = msg.toCharArray();
-        for (int i = 0; i < msgA.length; i++) {
-            char c = msgA[i];
-            if (c != ' ') {
-                int intC = convert(_alphabet.toInt(c));
-                msgA[i] = _alphabet.toChar(intC);
+        convert(msgA, 0, msgA.length);
+        return new String(msgA);
+    }
+
+    /** Convert the LEN characters of MSG starting at OFF in place, as for
+     *  convert(String). */
+    void convert(char[] msg, int off, int len) {
+        convert(msg, off, msg, off, len);
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF into DST,
+     *  starting at DSTOFF, as for convert(String). SRC and DST may be the
+     *  same array. */
+    void convert(char[] src, int srcOff, char[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            char c = src[srcOff + i];
+            int intC = _alphabet.toInt(c);
+            if (intC != Alphabet.NOT_FOUND) {
+                dst[dstOff + i] = _alphabet.toChar(convert(intC));
+            } else if (Character.isWhitespace(c)) {
+                dst[dstOff + i] = c;
+            } else {
+                throw error("%s is not valid", c);
+            }
+        }
+    }
+
+    /** Convert the LEN characters of MSG starting at OFF as for
+     *  convert(String), writing the results to OUT in groups instead of
+     *  back to MSG, in a single pass that checks, converts and formats
+     *  each character.  If a character is neither in my alphabet nor
+     *  whitespace, throws the same EnigmaException as convert, having
+     *  written nothing of MSG to OUT. */
+    void convert(char[] msg, int off, int len, GroupWriter out) {
+        out.reserve(len);
+        out.mark();
+        for (int i = off; i < off + len; i++) {
+            char c = msg[i];
+            int intC = _alphabet.toInt(c);
+            if (intC != Alphabet.NOT_FOUND) {
+                out.letter(_alphabet.toChar(convert(intC)));
+            } else if (!Character.isWhitespace(c)) {
+                out.reset();
+                throw error("%s is not valid", c);
             }
         }
+    }
+
+    /** Convert the LEN character indices of SRC starting at SRCOFF into
+     *  DST, starting at DSTOFF, as for convert(int). SRC and DST may be
+     *  the same array. */
+    void convert(int[] src, int srcOff, int[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = convert(src[srcOff + i]);
+        }
+    }
+
+    /** Convert the remaining characters of SRC into DST, as for
+     *  convert(String), advancing the positions of both. DST must have
+     *  room for all of them. */
+    void convert(CharBuffer src, CharBuffer dst) {
+        int len = src.remaining();
+        if (dst.remaining() < len) {
+            throw error("No room for %d converted characters", len);
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), len);
+            src.position(src.position() + len);
+            dst.position(dst.position() + len);
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = src.get();
+            int intC = _alphabet.toInt(c);
+            if (intC != Alphabet.NOT_FOUND) {
+                dst.put(_alphabet.toChar(convert(intC)));
+            } else if (Character.isWhitespace(c)) {
+                dst.put(c);
+            } else {
+                throw error("%s is not valid", c);
+            }
+        }
+    }
+
+    /** Returns the same result as convert(MSG), leaving the rotors in
+     *  the same state, but converts a long MSG in chunks on all
+     *  available processors. */
+    String convertParallel(String msg) {
+        char[] msgA = msg.toCharArray();
+        convertParallel(msgA, 0, msgA.length);
         return new String(msgA);
     }
 
+    /** Convert the LEN characters of MSG starting at OFF in place, with
+     *  the same result as convert(MSG, OFF, LEN).  Long ranges are
+     *  converted in chunks on all available processors.  Each chunk is
+     *  converted by a copy of me that first seeks past the characters of
+     *  the chunks before it, so a machine whose rotors cannot be sought
+     *  without stepping converts sequentially. */
+    void convertParallel(char[] msg, int off, int len) {
+        int workers = ForkJoinPool.getCommonPoolParallelism();
+        if (!_seekable || len < 2 * MIN_CHUNK || workers < 2) {
+            convert(msg, off, len);
+            return;
+        }
+        int chunk = Math.max(MIN_CHUNK, len / (4 * workers) + 1);
+        int chunks = (len + chunk - 1) / chunk;
+        long[] starts = new long[chunks + 1];
+        int[] invalid = new int[chunks];
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            int count = 0;
+            int to = off + Math.min(len, (k + 1) * chunk);
+            invalid[k] = -1;
+            for (int i = off + k * chunk; i < to; i++) {
+                char c = msg[i];
+                if (_alphabet.contains(c)) {
+                    count += 1;
+                } else if (!Character.isWhitespace(c)) {
+                    invalid[k] = i;
+                    return;
+                }
+            }
+            starts[k + 1] = count;
+        });
+        for (int k = 0; k < chunks; k++) {
+            if (invalid[k] >= 0) {
+                throw error("%s is not valid", msg[invalid[k]]);
+            }
+            starts[k + 1] += starts[k];
+        }
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            Machine m = new Machine(this);
+            m.seek(starts[k]);
+            m.convert(msg, off + k * chunk,
+                      Math.min(chunk, len - k * chunk));
+        });
+        seek(starts[chunks]);
+    }
+
+    /** A valid order of rotors in my slots, with what is derived from
+     *  it, so that it need only be checked and worked out once. */
+    private static class Arrangement {
+
+        /** The arrangement of ROTORS, named NAMES, in the slots of a
+         *  machine whose alphabet has SIZE characters. */
+        Arrangement(String[] names, Rotor[] rotors, int size) {
+            _names = names;
+            _rotors = rotors;
+            int count = 0;
+            boolean seekable = true;
+            for (Rotor r : rotors) {
+                if (r.rotates()) {
+                    count += 1;
+                    seekable &= !r.adjacentNotches();
+                }
+            }
+            _seekable = seekable;
+            _rotating = new int[count];
+            long positions = 1;
+            for (int i = 0, k = 0; i < rotors.length; i++) {
+                if (rotors[i].rotates()) {
+                    _rotating[k] = i;
+                    k += 1;
+                    if (positions >= 0) {
+                        positions = positions > Long.MAX_VALUE / size
+                            ? -1 : positions * size;
+                    }
+                }
+            }
+            _positions = positions;
+        }
+
+        /** Names of the rotors in each slot. */
+        private final String[] _names;
+
+        /** The rotor in each slot. */
+        private final Rotor[] _rotors;
+
+        /** Slots of the rotating rotors, from left to right. */
+        private final int[] _rotating;
+
+        /** True iff no rotating rotor has adjacent notches. */
+        private final boolean _seekable;
+
+        /** Number of positions of the rotating rotors, or -1 if that does
+         *  not fit in a long. */
+        private final long _positions;
+    }
+
+    /** What state() records of a machine: everything that a settings
+     *  line sets up. */
+    static final class State {
+
+        /** A record of rotors NAMES, with SETTINGS and RINGS, and
+         *  PLUGBOARD, which may be sought iff SEEKABLE. */
+        private State(String[] names, int[] settings, int[] rings,
+                      Permutation plugboard, boolean seekable) {
+            _names = names;
+            _settings = settings;
+            _rings = rings;
+            _plugboard = plugboard;
+            _seekable = seekable;
+        }
+
+        /** Return true iff a machine restored from me can seek ahead
+         *  without stepping. */
+        boolean seekable() {
+            return _seekable;
+        }
+
+        /** Names of the rotors in each slot. */
+        private final String[] _names;
+
+        /** Setting and ring of the rotor in each slot. */
+        private final int[] _settings, _rings;
+
+        /** The plugboard, or null. */
+        private final Permutation _plugboard;
+
+        /** True iff no rotating rotor has adjacent notches. */
+        private final boolean _seekable;
+    }
+
+    /** Most arrangements remembered by insertRotors. */
+    static final int MAX_ARRANGEMENTS = 1 << 10;
+
+    /** Smallest number of characters converted by one worker in
+     *  convertParallel. */
+    static final int MIN_CHUNK = 1 << 20;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -212,15 +857,48 @@ class Machine {
     /** Number of Pawls. */
     private int _numPawls;
 
-    /** Array of all Rotors in the Machine. */
-    private Object[] _allRotors;
+    /** All the rotors available to the Machine, by name. */
+    private RotorLibrary _library;
 
-    /** Rotors used in this Machine. */
+    /** Rotors used in this Machine, from _own. */
     private Rotor[] _rotors;
 
-    /** Maps Rotors to Names. */
-    private HashMap<String, Rotor> _rotorMap;
+    /** My own copies of the rotors I have used, by name.  Only their
+     *  wirings are shared with other machines. */
+    private HashMap<String, Rotor> _own;
+
+    /** The arrangement of rotors in my slots, or null. */
+    private Arrangement _arrangement;
+
+    /** Arrangements already checked, by their rotor names. */
+    private HashMap<List<String>, Arrangement> _arrangements;
 
     /** Plugboard for this Machine. */
     private Permutation _plugboard;
+
+    /** True iff seek may skip ahead without stepping, because no
+     *  rotating rotor has adjacent notches. */
+    private boolean _seekable;
+
+    /** Slots of my rotating rotors, from left to right. */
+    private int[] _rotating;
+
+    /** Memoized substitutions for my current rotors, or null. */
+    private SubstitutionCache _cache;
+
+    /** The setting of each of my rotors when _cache was last cleared.
+     *  Only those of rotors that do not rotate matter, since the others
+     *  are part of each position's key. */
+    private int[] _fixed;
+
+    /** True iff convert uses _cache. */
+    private boolean _compiled;
+
+    /** Number of coming key presses that move only the fast rotor, or 0
+     *  if that is not known. */
+    private int _quiet;
+
+    /** The key of the current position in _cache, or -1 if it must be
+     *  worked out again. */
+    private long _key;
 }
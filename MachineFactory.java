@@ -0,0 +1,136 @@
+package enigma;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Hands out independent machines for one configuration to any number of
+ *  threads.  Every machine shares the configuration's rotor wirings, so
+ *  a new one is cheap, and a used one is cheaper still: acquire takes an
+ *  idle machine from a bounded pool, when there is one, and only resets
+ *  it to the requested settings, so that it behaves exactly like a new
+ *  one.  Alternatively, local gives each thread
+ *  a machine of its own.  All methods may be called from any thread.
+ *  @author Brian Chiang
+ */
+class MachineFactory {
+
+    /** A factory for machines like TEMPLATE, which is never set up or
+     *  used itself, keeping at most CAPACITY idle machines. */
+    MachineFactory(Machine template, int capacity) {
+        _template = template;
+        _capacity = capacity;
+        _idle = new ConcurrentLinkedDeque<>();
+        _idleCount = new AtomicInteger();
+        _hits = new LongAdder();
+        _misses = new LongAdder();
+        _discards = new LongAdder();
+        _local = ThreadLocal.withInitial(() -> {
+            _misses.increment();
+            return _template.replicate();
+        });
+    }
+
+    /** A factory for machines like TEMPLATE with a pool of the default
+     *  capacity. */
+    MachineFactory(Machine template) {
+        this(template, DEFAULT_CAPACITY);
+    }
+
+    /** Return a new machine, owned by the caller, set up according to
+     *  SETTINGS, a settings line. */
+    Machine create(String settings) {
+        Machine m = _template.replicate();
+        Main.setUp(m, settings);
+        return m;
+    }
+
+    /** Return a machine set up according to SETTINGS, a settings line,
+     *  for the caller's exclusive use until it is given back to
+     *  release.  It comes from the pool if possible. */
+    Machine acquire(String settings) {
+        Machine m = _idle.pollFirst();
+        if (m == null) {
+            _misses.increment();
+            m = _template.replicate();
+        } else {
+            _idleCount.decrementAndGet();
+            _hits.increment();
+            m.reset();
+        }
+        try {
+            Main.setUp(m, settings);
+        } catch (EnigmaException excp) {
+            release(m);
+            throw excp;
+        }
+        return m;
+    }
+
+    /** Return M, which came from acquire and must no longer be used by
+     *  the caller, to the pool.  It is dropped if the pool is full.  A
+     *  pooled machine keeps no memoized substitutions, so an idle
+     *  machine costs only its rotors, whatever its configuration. */
+    void release(Machine m) {
+        if (_idleCount.incrementAndGet() > _capacity) {
+            _idleCount.decrementAndGet();
+            _discards.increment();
+        } else {
+            m.dropSubstitutions();
+            _idle.offerFirst(m);
+        }
+    }
+
+    /** Return the calling thread's own machine, set up according to
+     *  SETTINGS, a settings line.  The machine is made on the thread's
+     *  first call and reset on every later one, so it must not be kept
+     *  or shared. */
+    Machine local(String settings) {
+        Machine m = _local.get();
+        m.reset();
+        Main.setUp(m, settings);
+        return m;
+    }
+
+    /** Return the number of acquires served from the pool. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of machines made by acquire and local. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of released machines dropped because the pool
+     *  was full. */
+    long discards() {
+        return _discards.sum();
+    }
+
+    /** Return the number of idle machines in the pool. */
+    int idle() {
+        return _idleCount.get();
+    }
+
+    /** Default number of idle machines kept. */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /** The machine all others are replicas of. */
+    private final Machine _template;
+
+    /** Most idle machines kept. */
+    private final int _capacity;
+
+    /** Idle machines, most recently released first. */
+    private final ConcurrentLinkedDeque<Machine> _idle;
+
+    /** Number of machines in _idle, or about to be. */
+    private final AtomicInteger _idleCount;
+
+    /** Counts of pool hits, machines made, and machines dropped. */
+    private final LongAdder _hits, _misses, _discards;
+
+    /** Each thread's own machine. */
+    private final ThreadLocal<Machine> _local;
+}
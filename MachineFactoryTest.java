@@ -0,0 +1,125 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineFactory class.
+ *  @author Brian Chiang
+ */
+public class MachineFactoryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkPool() {
+        MachineFactory factory = new MachineFactory(standardMachine(), 1);
+        Machine m1 = factory.acquire(STANDARD_SETTINGS[0]);
+        Machine m2 = factory.acquire(STANDARD_SETTINGS[0]);
+        assertNotSame(m1, m2);
+        assertEquals(2, factory.misses());
+        assertEquals(EXPECTED0, m1.convert(MESSAGE));
+        factory.release(m1);
+        factory.release(m2);
+        assertEquals(1, factory.idle());
+        assertEquals(1, factory.discards());
+        Machine m3 = factory.acquire(STANDARD_SETTINGS[0]);
+        assertSame(m1, m3);
+        assertEquals(1, factory.hits());
+        assertEquals(EXPECTED0, m3.convert(MESSAGE));
+        try {
+            factory.acquire("* B Beta III IV NOPE AXLE");
+            fail("bad settings accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(1, factory.idle());
+        }
+        factory.release(m3);
+        assertEquals(EXPECTED0,
+                     factory.create(STANDARD_SETTINGS[0]).convert(MESSAGE));
+        Machine m4 = factory.acquire(STANDARD_SETTINGS[1]);
+        factory.release(m4);
+        assertEquals(EXPECTED0,
+                     factory.acquire(STANDARD_SETTINGS[0]).convert(MESSAGE));
+    }
+
+    @Test
+    public void checkLocal() throws InterruptedException {
+        MachineFactory factory = new MachineFactory(standardMachine());
+        Machine m = factory.local(STANDARD_SETTINGS[0]);
+        assertEquals(EXPECTED0, m.convert(MESSAGE));
+        assertSame(m, factory.local(STANDARD_SETTINGS[0]));
+        assertEquals(EXPECTED0, m.convert(MESSAGE));
+        Machine[] other = new Machine[1];
+        Thread t = new Thread(
+            () -> other[0] = factory.local(STANDARD_SETTINGS[1]));
+        t.start();
+        t.join();
+        assertNotSame(m, other[0]);
+        assertEquals(2, factory.misses());
+    }
+
+    @Test
+    public void checkContention() throws InterruptedException {
+        MachineFactory factory = new MachineFactory(standardMachine());
+        String[] expected = new String[STANDARD_SETTINGS.length];
+        for (int k = 0; k < STANDARD_SETTINGS.length; k++) {
+            expected[k] = factory.create(STANDARD_SETTINGS[k]).convert(MESSAGE);
+        }
+        int threads = 8, rounds = 500;
+        AtomicInteger wrong = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException excp) {
+                    return;
+                }
+                for (int i = 0; i < rounds; i++) {
+                    int k = (seed + i) % STANDARD_SETTINGS.length;
+                    Machine m = i % 2 == 0
+                        ? factory.acquire(STANDARD_SETTINGS[k])
+                        : factory.local(STANDARD_SETTINGS[k]);
+                    if (!expected[k].equals(m.convert(MESSAGE))) {
+                        wrong.incrementAndGet();
+                    }
+                    if (i % 2 == 0) {
+                        factory.release(m);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, wrong.get());
+        assertTrue(factory.misses() <= 2 * threads);
+        assertEquals(threads * rounds / 2,
+                     factory.hits() + factory.misses() - threads);
+    }
+
+    /* ***** HELPERS ***** */
+
+    /** A message to convert. */
+    private static final String MESSAGE = "FROMHISSHOULDERHIAWATHA";
+
+    /** MESSAGE converted with STANDARD_SETTINGS[0]. */
+    private static final String EXPECTED0 = "QVPQSOKOILPUBKJZPISFXDW";
+}
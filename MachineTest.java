@@ -1,11 +1,18 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
+import static enigma.TestUtils.*;
+
 /** The suite of all JUnit tests for the Machine class.
  *  @author Brian Chiang
  */
@@ -45,6 +52,7 @@ public class MachineTest {
         Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
         mach.insertRotors(ROTORS1);
         mach.setRotors(SETTING1);
+        mach.setRings("AAAA");
         return mach;
     }
 
@@ -55,11 +63,11 @@ public class MachineTest {
         assertEquals(5, mach.numRotors());
         assertEquals(3, mach.numPawls());
         assertEquals(AZ, mach.alphabet());
-        assertEquals(ROTORS.get("B"), mach.getRotor(0));
-        assertEquals(ROTORS.get("Beta"), mach.getRotor(1));
-        assertEquals(ROTORS.get("III"), mach.getRotor(2));
-        assertEquals(ROTORS.get("IV"), mach.getRotor(3));
-        assertEquals(ROTORS.get("I"), mach.getRotor(4));
+        for (int i = 0; i < ROTORS1.length; i++) {
+            Rotor r = ROTORS.get(ROTORS1[i]);
+            assertSame(r.wiring(), mach.getRotor(i).wiring());
+            assertNotSame(r, mach.getRotor(i));
+        }
     }
 
     @Test
@@ -76,4 +84,289 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    /** Return a random message of N characters from AZ, using seed
+     *  SEED. */
+    private static String randomMessage(int n, long seed) {
+        Random random = new Random(seed);
+        char[] msg = new char[n];
+        for (int i = 0; i < n; i++) {
+            msg[i] = AZ.toChar(random.nextInt(AZ.size()));
+        }
+        return new String(msg);
+    }
+
+    @Test
+    public void testCompiledMatchesReference() {
+        Machine mach = mach1();
+        mach.setRings("BCDE");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        String msg = randomMessage(100000, 61);
+        mach.setCompiled(false);
+        String expected = mach.convert(msg);
+        mach.setRotors(SETTING1);
+        mach.setRings("BCDE");
+        mach.setCompiled(true);
+        assertEquals(expected, mach.convert(msg));
+    }
+
+    @Test
+    public void testCachedMatchesReference() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), AZ)));
+        String[] names = { "B", "I", "II", "III", "IV", "V", "VI" };
+        for (int i = 1; i < names.length; i++) {
+            all.add(new MovingRotor(names[i],
+                    new Permutation(NAVALA.get(names[i]), AZ), "AN"));
+        }
+        Machine mach = new Machine(AZ, 7, 6, all);
+        mach.insertRotors(names);
+        mach.setRotors("AZZZZY");
+        String msg = randomMessage(100000, 61);
+        mach.setCompiled(false);
+        String expected = mach.convert(msg);
+        mach.setRotors("AZZZZY");
+        mach.setCompiled(true);
+        assertEquals(expected, mach.convert(msg));
+    }
+
+    @Test
+    public void testCacheAcrossSettings() {
+        Machine mach = mach1();
+        Machine ref = mach1();
+        ref.setCompiled(false);
+        Permutation plugs = new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ);
+        Random random = new Random(61);
+        for (int k = 0; k < 200; k++) {
+            String setting = randomMessage(4, random.nextInt());
+            String rings = randomMessage(4, random.nextInt());
+            Permutation plugboard = k % 50 < 25 ? plugs : null;
+            String msg = randomMessage(60, k);
+            for (Machine m : new Machine[] { mach, ref }) {
+                m.insertRotors(ROTORS1);
+                m.setRotors(setting);
+                m.setRings(rings);
+                m.setPlugboard(plugboard);
+            }
+            assertEquals(ref.convert(msg), mach.convert(msg));
+        }
+    }
+
+    /** Return the settings of the rotors of MACH. */
+    private static int[] settings(Machine mach) {
+        int[] result = new int[mach.numRotors()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = mach.getRotor(i).setting();
+        }
+        return result;
+    }
+
+    @Test
+    public void testConvertGrouped() {
+        String msg = "FROM his shoULDER HIAWATHA";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(bytes, StandardCharsets.UTF_8);
+        Machine mach = mach1();
+        mach.convert("FROM".toCharArray(), 0, 4, out);
+        try {
+            mach.convert(msg.toCharArray(), 4, msg.length() - 4, out);
+            fail("invalid character accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("h is not valid", excp.getMessage());
+        }
+        mach = mach1();
+        char[] expected = msg.toUpperCase().toCharArray();
+        mach.convert(expected, 0, expected.length);
+        out.endLine();
+        mach = mach1();
+        mach.convert(msg.toUpperCase().toCharArray(), 0, msg.length(), out);
+        out.flush();
+        String nl = System.lineSeparator();
+        String result = new String(bytes.toByteArray(),
+                                   StandardCharsets.UTF_8);
+        String grouped = new String(expected).replace(" ", "")
+            .replaceAll("(.{5})(?=.)", "$1 ");
+        assertEquals(grouped.substring(0, 4) + nl + grouped, result);
+    }
+
+    @Test
+    public void testDoubleStep() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), AZ)));
+        String[] names = { "B", "I", "II", "III" };
+        String[] notches = { "", "Q", "E", "V" };
+        for (int i = 1; i < names.length; i++) {
+            all.add(new MovingRotor(names[i],
+                    new Permutation(NAVALA.get(names[i]), AZ), notches[i]));
+        }
+        Machine mach = new Machine(AZ, 4, 3, all);
+        mach.insertRotors(names);
+        mach.setRotors("ADS");
+        String[] expected = { "ADT", "ADU", "ADV", "AEW", "BFX", "BFY" };
+        for (String setting : expected) {
+            mach.convert(0);
+            assertEquals(setting, rotorSettings(mach));
+        }
+        mach.convert(0);
+        mach.setRotors("ADU");
+        mach.convert(0);
+        mach.convert(0);
+        assertEquals("AEW", rotorSettings(mach));
+        mach.setRotors("QDA");
+        for (int t = 0; t < 20; t++) {
+            mach.convert(0);
+        }
+        assertEquals("QDU", rotorSettings(mach));
+        mach.setRings("AAB");
+        mach.convert(0);
+        mach.convert(0);
+        assertEquals("QEV", rotorSettings(mach));
+    }
+
+    /** Return the settings of the rotors of MACH, other than the
+     *  reflector, as letters. */
+    private static String rotorSettings(Machine mach) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < mach.numRotors(); i++) {
+            result.append(AZ.toChar(mach.getRotor(i).setting()));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testSeek() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), AZ)));
+        all.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), AZ)));
+        String[] names = { "B", "Beta", "VI", "VII", "VIII" };
+        for (int i = 2; i < names.length; i++) {
+            all.add(new MovingRotor(names[i],
+                    new Permutation(NAVALA.get(names[i]), AZ), "ZM"));
+        }
+        Machine mach = new Machine(AZ, 5, 3, all);
+        mach.insertRotors(names);
+        for (long steps : new long[] { 0, 1, 7, 25, 26, 676, 123457 }) {
+            mach.setRotors("AKLZ");
+            mach.setRings("CDEF");
+            for (long t = 0; t < steps; t++) {
+                mach.convert(0);
+            }
+            int[] expected = settings(mach);
+            mach.setRotors("AKLZ");
+            mach.setRings("CDEF");
+            mach.seek(steps);
+            assertArrayEquals("seek " + steps, expected, settings(mach));
+        }
+        mach.seek(1000000000000000L);
+    }
+
+    @Test
+    public void testConvertParallel() {
+        StringBuilder msg = new StringBuilder(randomMessage(
+                3 * Machine.MIN_CHUNK, 17));
+        for (int i = 0; i < msg.length(); i += 7) {
+            msg.setCharAt(i, ' ');
+        }
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        String expected = mach.convert(msg.toString());
+        int[] expectedSettings = settings(mach);
+        mach.setRotors(SETTING1);
+        assertEquals(expected, mach.convertParallel(msg.toString()));
+        assertArrayEquals(expectedSettings, settings(mach));
+    }
+
+    @Test
+    public void testConvertRanges() {
+        String msg = "FROM HIS SHOULDER HIAWATHA";
+        String expected = "QVPQ SOK OILPUBKJ ZPISFXDW";
+        Permutation plugboard =
+            new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ);
+        Machine mach = mach1();
+        mach.setPlugboard(plugboard);
+        char[] dst = new char[msg.length() + 4];
+        mach.convert(msg.toCharArray(), 0, dst, 2, msg.length());
+        assertEquals(expected, new String(dst, 2, msg.length()));
+
+        mach.setRotors(SETTING1);
+        CharBuffer out = CharBuffer.allocate(msg.length());
+        mach.convert(CharBuffer.wrap(msg), out);
+        assertEquals(expected, new String(out.array()));
+
+        mach.setRotors(SETTING1);
+        String letters = msg.replace(" ", "");
+        int[] indices = new int[letters.length()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = AZ.toInt(letters.charAt(i));
+        }
+        mach.convert(indices, 0, indices, 0, indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = AZ.toChar(indices[i]);
+        }
+        assertEquals(expected.replace(" ", ""),
+                     new String(indices, 0, indices.length));
+    }
+
+    @Test
+    public void testReinsertRotors() {
+        ArrayList<Rotor> all = new ArrayList<>(ROTORS.values());
+        all.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), AZ), "E"));
+        Machine mach = new Machine(AZ, 5, 3, all);
+        String[] other = { "B", "Beta", "II", "IV", "I" };
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        mach.insertRotors(ROTORS1);
+        mach.setRotors(SETTING1);
+        String expected1 = mach.convert(msg);
+        mach.insertRotors(other);
+        mach.setRotors(SETTING1);
+        String expected2 = mach.convert(msg);
+        assertFalse(expected1.equals(expected2));
+        for (int k = 0; k < 3; k++) {
+            mach.insertRotors(ROTORS1.clone());
+            mach.setRotors(SETTING1);
+            assertEquals(expected1, mach.convert(msg));
+            assertSame(ROTORS.get("III").wiring(),
+                       mach.getRotor(2).wiring());
+            mach.insertRotors(other);
+            mach.setRotors(SETTING1);
+            assertEquals(expected2, mach.convert(msg));
+            for (String[] bad : new String[][] {
+                    { "B", "Beta", "III", "III", "I" },
+                    { "Beta", "B", "III", "IV", "I" },
+                    { "B", "Beta", "III", "IV", "X" } }) {
+                try {
+                    mach.insertRotors(bad);
+                    fail("bad rotors accepted");
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndependentMachines() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        Machine other = mach.replicate();
+        Machine third = new Machine(AZ, 5, 3, ROTORS.values());
+        String msg = randomMessage(1000, 5);
+        for (Machine m : new Machine[] { mach, other, third }) {
+            m.insertRotors(ROTORS1);
+            m.setRotors(SETTING1);
+            m.setRings("AAAA");
+        }
+        StringBuilder a = new StringBuilder(), b = new StringBuilder(),
+            c = new StringBuilder();
+        for (int i = 0; i < msg.length(); i++) {
+            String ch = msg.substring(i, i + 1);
+            a.append(mach.convert(ch));
+            b.append(other.convert(ch));
+            c.append(third.convert(ch));
+        }
+        assertEquals(a.toString(), b.toString());
+        assertEquals(a.toString(), c.toString());
+        assertEquals(0, ROTORS.get("I").setting());
+    }
 }
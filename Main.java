@@ -1,13 +1,24 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.function.LongConsumer;
 
 import ucb.util.CommandArgs;
 
@@ -25,18 +36,106 @@ public final class Main {
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
-     *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  standard output. With --parallel, long message lines are
+     *  converted on all available processors. With --blocks, the
+     *  messages following different settings lines are converted
+     *  concurrently on all available processors and written in order.
+     *  With --pipeline (and not --blocks), reading, converting and
+     *  writing are done on three threads at once. With --period, each
+     *  settings line is answered with the PeriodAnalysis of the machine
+     *  it sets up, and message lines are ignored. With
+     *  --crib=OFFSET:CRIB, the message lines of INPUT are a ciphertext,
+     *  and every settings line under which it decrypts to CRIB, starting
+     *  OFFSET characters in, is written as it is found. With
+     *  --attack=CORPUS, the message lines of INPUT are a ciphertext with
+     *  no known plaintext, and the settings line under which it best
+     *  matches the statistics of the text in the file CORPUS is written,
+     *  with the decrypted message. With --mmap, INPUT
+     *  and OUTPUT must both be given; the input is mapped into memory
+     *  and the output is written straight to its file channel. With
+     *  --serve=ADDRESS, all ARGS name configuration files, and messages
+     *  are read from and answered to clients of a Server listening at
+     *  ADDRESS (a port on the loopback interface, or the path of a
+     *  Unix-domain socket) until the process is killed. With
+     *  --compile=SNAPSHOT, ARGS[0] is read and written to the file
+     *  SNAPSHOT as a ConfigSnapshot, which may then be given instead of
+     *  the configuration file in later runs. With --no-expand, rotors
+     *  are not expanded into per-setting lookup tables. Exits
+     *  normally if there are no errors in the input; otherwise with
+     *  code 1. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
+                new CommandArgs("--verbose --parallel --blocks --pipeline "
+                                + "--period --mmap --no-expand "
+                                + "--crib=(.+) --attack=(.+) "
+                                + "--serve=(.+) --compile=(.+) "
+                                + "--=(.*){1,}", args);
+            boolean serve = options.contains("--serve");
+            if (!options.ok()
+                || (!serve && options.get("--").size() > 3)) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--parallel] [--blocks] [--pipeline] "
+                            + "[--period] [--mmap] [--no-expand] "
+                            + "CONFIG [INPUT [OUTPUT]]"
+                            + "%n       java enigma.Main [--verbose] "
+                            + "--crib=OFFSET:CRIB CONFIG [INPUT [OUTPUT]]"
+                            + "%n       java enigma.Main "
+                            + "--attack=CORPUS CONFIG [INPUT [OUTPUT]]"
+                            + "%n       java enigma.Main [--verbose] "
+                            + "--serve=ADDRESS CONFIG..."
+                            + "%n       java enigma.Main "
+                            + "--compile=SNAPSHOT CONFIG");
             }
 
             _verbose = options.contains("--verbose");
+            _parallel = options.contains("--parallel");
+            _blocks = options.contains("--blocks");
+            _pipeline = options.contains("--pipeline");
+            _period = options.contains("--period");
+            _mmap = options.contains("--mmap");
+            _expand = !options.contains("--no-expand");
+            if (_mmap && options.get("--").size() != 3) {
+                throw error("--mmap needs INPUT and OUTPUT files");
+            }
+            if (options.contains("--compile")) {
+                ConfigSnapshot.write(loadConfig(options.get("--").get(0)),
+                                     Paths.get(options.getFirst("--compile")));
+                return;
+            }
+            if (serve) {
+                Server server = new Server(options.get("--"));
+                ServerSocketChannel listener =
+                    Server.bind(options.getFirst("--serve"));
+                try {
+                    System.out.printf("listening at %s%n",
+                                      listener.getLocalAddress());
+                    System.out.flush();
+                } catch (IOException excp) {
+                    throw error("could not listen: %s", excp.getMessage());
+                }
+                server.serve(listener);
+                return;
+            }
+            if (options.contains("--crib")) {
+                String crib = options.getFirst("--crib");
+                int colon = crib.indexOf(':');
+                long offset;
+                try {
+                    offset =
+                        Long.parseLong(crib.substring(0, Math.max(colon, 0)));
+                } catch (NumberFormatException excp) {
+                    throw error("--crib needs OFFSET:CRIB");
+                }
+                new Main(options.get("--")).searchCrib(
+                    offset, crib.substring(colon + 1));
+                return;
+            }
+            if (options.contains("--attack")) {
+                new Main(options.get("--")).attack(
+                    options.getFirst("--attack"));
+                return;
+            }
             new Main(options.get("--")).process();
             return;
         } catch (EnigmaException excp) {
@@ -48,125 +147,335 @@ public final class Main {
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        this(args, null);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS (see comment
+     *  on main).  If BLOCKTIMES is not null, it is given the time in
+     *  nanoseconds spent on each settings block, from the start of its
+     *  settings line to the start of the next one or the end of input. */
+    Main(List<String> args, LongConsumer blockTimes) {
+        _blockTimes = blockTimes;
+        _configName = args.get(0);
 
-        if (args.size() > 1) {
-            _input = getInput(args.get(1));
+        int block = _parallel ? PARALLEL_BLOCK : LineReader.BLOCK_SIZE;
+        if (_mmap) {
+            _input = new LineReader(getMappedReader(args.get(1)), block);
+        } else if (args.size() > 1) {
+            _input = new LineReader(getReader(args.get(1)), block);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(new InputStreamReader(System.in), block);
         }
 
-        if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+        if (_mmap) {
+            _output = new GroupWriter(getChannelOutput(args.get(2)));
+        } else if (args.size() > 2) {
+            _output = new GroupWriter(getOutput(args.get(2)));
         } else {
-            _output = System.out;
+            _output = new GroupWriter(System.out);
+        }
+    }
+
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
+        try {
+            return new InputStreamReader(new FileInputStream(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a Reader reading from the file named NAME by mapping it
+     *  into memory. */
+    private Reader getMappedReader(String name) {
+        try {
+            return new MappedFileReader(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return an OutputStream writing directly to the channel of the
+     *  file named NAME. */
+    private OutputStream getChannelOutput(String name) {
         try {
-            return new Scanner(new File(name));
+            return Channels.newOutputStream(
+                FileChannel.open(Paths.get(name), StandardOpenOption.WRITE,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return an OutputStream writing to the file named NAME. */
+    private OutputStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new FileOutputStream(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine machine = readConfig();
-        if (!_input.hasNext("\\*.*")) {
-            throw error("input must have a setting line");
-        }
-        while (_input.hasNext("\\*.*")) {
-            String settings = _input.nextLine();
-            while (settings.length() == 0) {
-                _output.println(settings);
-                settings = _input.nextLine();
-            }
-            setUp(machine, settings);
-            while ((!_input.hasNext("\\*.*")) && _input.hasNextLine()) {
-                String untranslated = " ";
-                untranslated += _input.nextLine();
-                for (int i = 0; i < untranslated.length(); i++) {
-                    char b = untranslated.charAt(i);
-                    if (!_alphabet.contains(b)) {
-                        if (!Character.isWhitespace(b)) {
+     *  file _configName and apply it to the messages in _input, sending the
+     *  results to _output.  A line whose first character is '*' is a
+     *  settings line; other lines are messages.  Message lines are
+     *  converted in place in _input's buffer, a piece at a time, or with
+     *  --blocks or --pipeline, handed to a BlockConverter or Pipeline
+     *  along with the state set up by each settings line.  Converted
+     *  lines are flushed whenever no further input is waiting, so that
+     *  interactive use sees each answer as soon as its line is read. */
+    void process() {
+        Machine machine = loadConfig(_configName);
+        _alphabet = machine.alphabet();
+        BlockConverter blocks = _blocks && !_period
+            ? new BlockConverter(machine, _output,
+                                 Runtime.getRuntime().availableProcessors())
+            : null;
+        Pipeline pipeline = _pipeline && !_blocks && !_period
+            ? new Pipeline(machine, _output) : null;
+        try {
+            boolean ready = false;
+            StringBuilder settings = null;
+            long blockStart = 0;
+            while (_input.next()) {
+                char[] buffer = _input.buffer();
+                int start = _input.start(), len = _input.length();
+                if (_input.lineStart()) {
+                    if (len > 0 && buffer[start] == '*') {
+                        if (_blockTimes != null) {
+                            long now = System.nanoTime();
+                            if (ready) {
+                                _blockTimes.accept(now - blockStart);
+                            }
+                            blockStart = now;
+                        }
+                        settings = new StringBuilder();
+                    } else if (!ready && (len > 0 || !_input.lineEnd())) {
+                        throw error("input must have a setting line");
+                    }
+                }
+                if (settings != null) {
+                    settings.append(buffer, start, len);
+                    if (_input.lineEnd()) {
+                        setUp(machine, settings.toString());
+                        if (_period) {
+                            _output.writeText(
+                                new PeriodAnalysis(machine).toString());
+                            _output.endLine();
+                        } else if (blocks != null) {
+                            blocks.begin(machine.state());
+                        } else if (pipeline != null) {
+                            pipeline.begin(machine.state());
+                        }
+                        settings = null;
+                        ready = true;
+                    }
+                    continue;
+                }
+                if (_period) {
+                    continue;
+                }
+                if (blocks != null || pipeline != null) {
+                    int letters = 0;
+                    for (int i = start; i < start + len; i++) {
+                        char b = buffer[i];
+                        if (_alphabet.contains(b)) {
+                            letters += 1;
+                        } else if (!Character.isWhitespace(b)) {
                             throw error("%s is not valid", b);
                         }
                     }
+                    if (blocks != null) {
+                        blocks.add(buffer, start, len, letters,
+                                   _input.lineEnd());
+                    } else {
+                        pipeline.add(buffer, start, len, _input.lineEnd());
+                    }
+                    continue;
+                }
+                if (_parallel) {
+                    machine.convertParallel(buffer, start, len);
+                    _output.write(buffer, start, len);
+                } else {
+                    machine.convert(buffer, start, len, _output);
                 }
-                String trans = machine.convert(untranslated.substring(1));
-                printMessageLine(trans);
+                if (_input.lineEnd()) {
+                    _output.endLine();
+                    if (!_input.ready()) {
+                        _output.flush();
+                    }
+                }
+            }
+            if (!ready) {
+                throw error("input must have a setting line");
+            }
+            if (_blockTimes != null) {
+                _blockTimes.accept(System.nanoTime() - blockStart);
             }
+            if (_verbose) {
+                System.err.printf("Expanded rotor tables: %d bytes%n",
+                                  machine.library().expandedBytes());
+            }
+        } finally {
+            if (blocks != null) {
+                blocks.finish();
+            } else if (pipeline != null) {
+                pipeline.finish();
+            }
+            _output.flush();
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Read the ciphertext in _input, ignoring settings lines and
+     *  whitespace, and write each settings line under which it decrypts
+     *  to CRIB, starting OFFSET characters in, as a CribSearch finds
+     *  it. */
+    void searchCrib(long offset, String crib) {
+        Machine machine = loadConfig(_configName);
+        _alphabet = machine.alphabet();
+        CribSearch search =
+            new CribSearch(machine, readCiphertext(), crib, offset);
         try {
-            if (!_config.hasNextLine()) {
+            search.search(Runtime.getRuntime().availableProcessors(),
+                          line -> {
+                              _output.writeText(line);
+                              _output.endLine();
+                              _output.flush();
+                          });
+        } finally {
+            _output.flush();
+        }
+        if (_verbose) {
+            System.err.printf("Tried %d candidates in %d rotor orders; "
+                              + "found %d%n", search.tried(),
+                              search.orders(), search.found());
+        }
+    }
+
+    /** Read the ciphertext in _input, ignoring settings lines and
+     *  whitespace, train n-gram tables on the text of the file named
+     *  CORPUS, and write the settings line a CiphertextAttack finds best,
+     *  followed by the message it decrypts to.  Progress goes to the
+     *  standard error. */
+    void attack(String corpus) {
+        Machine machine = loadConfig(_configName);
+        _alphabet = machine.alphabet();
+        String ciphertext = readCiphertext();
+        String sample;
+        try {
+            sample = new String(Files.readAllBytes(Paths.get(corpus)),
+                                StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not open %s", corpus);
+        }
+        CiphertextAttack attack =
+            new CiphertextAttack(machine, ciphertext,
+                                 new NgramTable(_alphabet, 2, sample),
+                                 new NgramTable(_alphabet, 3, sample),
+                                 new NgramTable(_alphabet, 4, sample),
+                                 CiphertextAttack.KEEP,
+                                 CiphertextAttack.PAIRS);
+        System.err.printf("Trying %d rotor orders at %d positions%n",
+                          attack.orders(), attack.positions());
+        String best = attack.attack(
+            Runtime.getRuntime().availableProcessors(),
+            line -> System.err.println(line));
+        if (best == null) {
+            throw error("no rotor orders fit the machine");
+        }
+        setUp(machine, best);
+        char[] text = ciphertext.toCharArray();
+        machine.convert(text, 0, text.length);
+        _output.writeText(best);
+        _output.endLine();
+        _output.write(text, 0, text.length);
+        _output.endLine();
+        _output.flush();
+    }
+
+    /** Return the ciphertext in _input: its message lines, without
+     *  whitespace. */
+    private String readCiphertext() {
+        StringBuilder text = new StringBuilder();
+        boolean settings = false;
+        while (_input.next()) {
+            char[] buffer = _input.buffer();
+            int start = _input.start(), len = _input.length();
+            if (_input.lineStart()) {
+                settings = len > 0 && buffer[start] == '*';
+            }
+            for (int i = start; !settings && i < start + len; i++) {
+                char b = buffer[i];
+                if (_alphabet.contains(b)) {
+                    text.append(b);
+                } else if (!Character.isWhitespace(b)) {
+                    throw error("%s is not valid", b);
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /** Return an Enigma machine configured from the file named NAME,
+     *  which is either a configuration file or a ConfigSnapshot. */
+    static Machine loadConfig(String name) {
+        if (ConfigSnapshot.isSnapshot(Paths.get(name))) {
+            return ConfigSnapshot.read(Paths.get(name));
+        }
+        try (Scanner config = new Scanner(new File(name))) {
+            return readConfig(config);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return an Enigma machine configured from the contents of
+     *  configuration file CONFIG. */
+    static Machine readConfig(Scanner config) {
+        try {
+            if (!config.hasNextLine()) {
                 throw error("Configuration file is empty");
             }
-            String letter = _config.nextLine();
-            _alphabet = new Alphabet(letter);
-            if (!_config.hasNextInt()) {
+            String letter = config.nextLine();
+            Alphabet alphabet = new Alphabet(letter);
+            if (!config.hasNextInt()) {
                 throw error("Missing number of Pawls and Rotors");
             }
-            int rotors = _config.nextInt();
-            if (!_config.hasNextInt()) {
+            int rotors = config.nextInt();
+            if (!config.hasNextInt()) {
                 throw error("Missing Pawls");
             }
-            int pawls = _config.nextInt();
+            int pawls = config.nextInt();
             if (pawls >= rotors) {
                 throw error("Too many pawls");
             }
-            ArrayList<Rotor> everyRotor = new ArrayList<Rotor>();
-            while (_config.hasNext()) {
-                everyRotor.add(readRotor());
+            RotorLibrary library = new RotorLibrary(expansionLimit());
+            while (config.hasNext()) {
+                readRotor(config, alphabet, library);
             }
-            return new Machine(_alphabet, rotors, pawls, everyRotor);
+            return new Machine(alphabet, rotors, pawls, library);
         } catch (NoSuchElementException excp) {
             throw error("Configuration file is truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Read the description of a rotor over ALPHABET from CONFIG and
+     *  define it in LIBRARY.  Its cycles are only checked and compiled
+     *  when the rotor is first used. */
+    private static void readRotor(Scanner config, Alphabet alphabet,
+                                  RotorLibrary library) {
         try {
-            String cycles = "";
-            String rotor = _config.next();
-            String config = _config.next();
-            while (_config.hasNext("\\(.*\\)")) {
-                cycles = cycles +  _config.next();
-            }
-            Permutation permute = new Permutation(cycles, _alphabet);
-            char character = config.charAt(0);
-            if (character == 'M') {
-                String nutch = "";
-                for (int elem = 1; elem < config.length(); elem++) {
-                    nutch += config.charAt(elem);
-                }
-                return new MovingRotor(rotor, permute, nutch);
-            } else if (character == 'N') {
-                return new FixedRotor(rotor, permute);
-            } else if (character == 'R') {
-                return new Reflector(rotor, permute);
-            } else {
-                throw new EnigmaException("Rotor is unavailable");
+            StringBuilder cycles = new StringBuilder();
+            String rotor = config.next();
+            String type = config.next();
+            while (config.hasNext("\\(.*\\)")) {
+                cycles.append(config.next());
             }
+            String wiring = cycles.toString();
+            library.define(rotor, type.charAt(0), type.substring(1),
+                           () -> new Permutation(wiring, alphabet));
         } catch (NoSuchElementException excp) {
             throw error("Rotor description insufficient");
         }
@@ -174,7 +483,7 @@ public final class Main {
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
         String[] settingsArr = settings.split("(\\s)");
 
         if (!settingsArr[0].equals("*")) {
@@ -207,7 +516,7 @@ public final class Main {
                 }
             }
             cycle = cycle.trim();
-            Permutation newplugboard = new Permutation(cycle, _alphabet);
+            Permutation newplugboard = new Permutation(cycle, M.alphabet());
             M.setPlugboard(newplugboard);
         }
     }
@@ -217,30 +526,54 @@ public final class Main {
         return _verbose;
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        msg = msg.replace(" ", "");
-        String messaged = "";
-        while (msg.length() >= 6) {
-            messaged = messaged + msg.substring(0, 5) + " ";
-            msg = msg.substring(5);
-        }
-        _output.println(messaged + msg);
+    /** Return the most bytes of expanded rotor tables a configuration
+     *  may make: none if --no-expand was specified. */
+    static long expansionLimit() {
+        return _expand ? RotorWiring.MAX_EXPANDED_BYTES : 0;
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Name of the machine configuration file or snapshot. */
+    private String _configName;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupWriter _output;
+
+    /** Receiver of settings block times, or null. */
+    private LongConsumer _blockTimes;
+
+    /** Size of the input buffer with --parallel, large enough for
+     *  Machine.convertParallel to split a piece among processors. */
+    private static final int PARALLEL_BLOCK = 16 * Machine.MIN_CHUNK;
+
+    /** True if --mmap specified. */
+    private static boolean _mmap;
+
+    /** False if --no-expand specified: rotors convert by arithmetic on
+     *  their permutations rather than by expanded tables. */
+    private static boolean _expand = true;
 
     /** True if --verbose specified. */
     private static boolean _verbose;
+
+    /** True if --parallel specified: long message lines are converted
+     *  in chunks on all processors. */
+    private static boolean _parallel;
+
+    /** True if --blocks specified: the messages of different settings
+     *  lines are converted concurrently. */
+    private static boolean _blocks;
+
+    /** True if --pipeline specified: reading, converting and writing are
+     *  done on separate threads. */
+    private static boolean _pipeline;
+
+    /** True if --period specified: settings lines are answered with
+     *  their PeriodAnalysis instead of converting messages. */
+    private static boolean _period;
 }
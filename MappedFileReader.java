@@ -0,0 +1,131 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** A Reader that decodes a file by mapping it into memory a window at a
+ *  time, so that files of any size, including those over 2GB, are read
+ *  without copying them through stream buffers.  Runs of ASCII
+ *  characters in ASCII-compatible character sets are decoded directly
+ *  from the mapped bytes.
+ *  @author Brian Chiang
+ */
+class MappedFileReader extends Reader {
+
+    /** A reader for the file FILE in character set CHARSET, mapping
+     *  WINDOW bytes at a time. */
+    MappedFileReader(Path file, Charset charset, int window)
+        throws IOException {
+        _channel = FileChannel.open(file, StandardOpenOption.READ);
+        _size = _channel.size();
+        _windowSize = window;
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _ascii = charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.US_ASCII);
+        map(0);
+    }
+
+    /** A reader for the file FILE in the default character set. */
+    MappedFileReader(Path file) throws IOException {
+        this(file, Charset.defaultCharset(), WINDOW_SIZE);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (_window.remaining() < SPILL && !lastWindow()) {
+                map(_start + _window.position());
+            }
+            if (!_window.hasRemaining()) {
+                return -1;
+            }
+            int n = 0;
+            if (_ascii) {
+                int p = _window.position(), limit = _window.limit();
+                while (n < len && p < limit) {
+                    byte b = _window.get(p);
+                    if (b < 0) {
+                        break;
+                    }
+                    cbuf[off + n] = (char) b;
+                    n += 1;
+                    p += 1;
+                }
+                _window.position(p);
+            }
+            if (n < len && _window.hasRemaining()) {
+                CharBuffer out = CharBuffer.wrap(cbuf, off + n, len - n);
+                _decoder.decode(_window, out, lastWindow());
+                n = out.position() - off;
+            }
+            if (n > 0) {
+                return n;
+            }
+            if (lastWindow()) {
+                return -1;
+            }
+            map(_start + _window.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Return true iff the current window extends to the end of the
+     *  file. */
+    private boolean lastWindow() {
+        return _start + _window.limit() == _size;
+    }
+
+    /** Map the window of the file starting at byte START. */
+    private void map(long start) throws IOException {
+        _start = start;
+        long len = Math.min(_windowSize, _size - start);
+        _window = _channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+    }
+
+    /** Default number of bytes mapped at once. */
+    static final int WINDOW_SIZE = 1 << 26;
+
+    /** A window with fewer unread bytes than this is remapped, so that no
+     *  encoded character is split between windows. */
+    private static final int SPILL = 16;
+
+    /** The file being read. */
+    private final FileChannel _channel;
+
+    /** Size of the file in bytes. */
+    private final long _size;
+
+    /** Largest number of bytes mapped at once. */
+    private final int _windowSize;
+
+    /** Decoder for the file's bytes. */
+    private final CharsetDecoder _decoder;
+
+    /** True iff ASCII bytes may be decoded directly. */
+    private final boolean _ascii;
+
+    /** Offset in the file of the current window. */
+    private long _start;
+
+    /** The currently mapped part of the file. */
+    private MappedByteBuffer _window;
+}
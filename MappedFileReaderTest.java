@@ -0,0 +1,52 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MappedFileReader class.
+ *  @author Brian Chiang
+ */
+public class MappedFileReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSmallWindows() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("ABC\u00e9\u4e00D\n");
+        }
+        Path file = Files.createTempFile("enigma", ".txt");
+        try {
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            Files.write(file, bytes);
+            for (int window : new int[] { 17, 18, 19, 64, 1 << 16 }) {
+                MappedFileReader reader =
+                    new MappedFileReader(file, StandardCharsets.UTF_8, window);
+                StringBuilder read = new StringBuilder();
+                char[] buf = new char[11];
+                for (int n = reader.read(buf, 0, buf.length); n >= 0;
+                     n = reader.read(buf, 0, buf.length)) {
+                    read.append(buf, 0, n);
+                }
+                reader.close();
+                assertEquals("window " + window, text.toString(),
+                             read.toString());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
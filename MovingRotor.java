@@ -1,7 +1,5 @@
 package enigma;
 
-import static enigma.EnigmaException.*;
-
 /** Class that represents a rotating rotor in the enigma machine.
  *  @author Brian Chiang
  */
@@ -13,14 +11,14 @@ class MovingRotor extends Rotor {
      *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
-        super(name, perm);
-        _notches = notches;
-        for (char b: notches.toCharArray()) {
-            if (!alphabet().contains(b)) {
-                throw error("Char %s is not found in alphabet", b);
-            }
-        }
+        this(new RotorWiring(name, perm, notches));
     }
+
+    /** A moving rotor with WIRING, at its 0 setting and ring. */
+    MovingRotor(RotorWiring wiring) {
+        super(wiring);
+    }
+
     @Override
     boolean rotates() {
         return true;
@@ -28,8 +26,38 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        int truePerm = permutation().wrap(setting() + ringSetting());
-        return _notches.indexOf(alphabet().toChar(truePerm)) >= 0;
+        return atNotch(setting());
+    }
+
+    @Override
+    boolean atNotch(int posn) {
+        return wiring().notchAt(permutation().wrap(posn + ringSetting()));
+    }
+
+    @Override
+    int stepsToNotch() {
+        return wiring().toNotch(permutation().wrap(setting() + ringSetting()));
+    }
+
+    @Override
+    long notchesFrom(int posn, long len) {
+        int size = size();
+        int start = permutation().wrap(posn + ringSetting());
+        int end = start + (int) (len % size);
+        RotorWiring w = wiring();
+        long count = (len / size) * w.notchesBelow(size);
+        if (end <= size) {
+            count += w.notchesBelow(end) - w.notchesBelow(start);
+        } else {
+            count += w.notchesBelow(size) - w.notchesBelow(start)
+                + w.notchesBelow(end - size);
+        }
+        return count;
+    }
+
+    @Override
+    boolean adjacentNotches() {
+        return wiring().adjacentNotches();
     }
 
     @Override
@@ -37,7 +65,4 @@ class MovingRotor extends Rotor {
         set(true);
         set(setting() + 1);
     }
-
-    /** Where notches are in ALPHA. */
-    private String _notches;
 }
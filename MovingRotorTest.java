@@ -95,4 +95,38 @@ public class MovingRotorTest {
                 rotor.convertBackward(alpha.indexOf('S')));
     }
 
+    @Test
+    public void checkStepsToNotch() {
+        setRotor("I", NAVALA, "QZ");
+        assertEquals(alpha.indexOf('Q'), rotor.stepsToNotch());
+        rotor.set(alpha.indexOf('Q'));
+        assertEquals(0, rotor.stepsToNotch());
+        rotor.set(alpha.indexOf('R'));
+        assertEquals(alpha.indexOf('Z') - alpha.indexOf('R'),
+                     rotor.stepsToNotch());
+        rotor.setRing('C');
+        rotor.set(0);
+        assertEquals(alpha.indexOf('Q') - 2, rotor.stepsToNotch());
+        setRotor("I", NAVALA, "");
+        assertEquals(Integer.MAX_VALUE, rotor.stepsToNotch());
+    }
+
+    @Test
+    public void checkExpandedTables() {
+        setRotor("IV", NAVALA, "J");
+        Permutation perm = rotor.permutation();
+        int n = rotor.size();
+        for (int s = 0; s < n; s++) {
+            rotor.set(s);
+            for (int p = 0; p < n; p++) {
+                assertEquals(perm.wrap(perm.permute(perm.wrap(p + s)) - s),
+                             rotor.convertForward(p));
+                assertEquals(perm.wrap(perm.invert(perm.wrap(p + s)) - s),
+                             rotor.convertBackward(p));
+            }
+        }
+        assertNotNull(rotor.wiring().forwardTable());
+        assertEquals(4 * n * n, rotor.wiring().expandedBytes());
+    }
+
 }
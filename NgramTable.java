@@ -0,0 +1,122 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The log-likelihoods of the sequences of N characters of an alphabet,
+ *  learned from sample text.  They are kept in one dense array indexed
+ *  by the Alphabet indices of a sequence's characters, the first most
+ *  significant, so that scoring a text is a sliding index and one array
+ *  read per character, with nothing allocated.  A sequence never seen in
+ *  the sample counts as a hundredth of one occurrence.
+ *  @author Brian Chiang
+ */
+final class NgramTable {
+
+    /** A table of the N-character sequences of ALPHABET as they occur in
+     *  SAMPLE.  Characters of SAMPLE that are not in ALPHABET, even in
+     *  upper case, are skipped, so sequences run across spaces and
+     *  punctuation as they do in a message. */
+    NgramTable(Alphabet alphabet, int n, CharSequence sample) {
+        if (n < 1) {
+            throw error("bad n-gram length: %d", n);
+        }
+        int size = alphabet.size();
+        long cells = 1;
+        for (int i = 0; i < n; i++) {
+            cells *= size;
+            if (cells > MAX_CELLS) {
+                throw error("too many %d-grams of %d characters", n, size);
+            }
+        }
+        int[] counts = new int[(int) cells];
+        long total = 0;
+        int index = 0, run = 0;
+        for (int i = 0; i < sample.length(); i++) {
+            char ch = sample.charAt(i);
+            int c = alphabet.toInt(ch);
+            if (c == Alphabet.NOT_FOUND) {
+                c = alphabet.toInt(Character.toUpperCase(ch));
+                if (c == Alphabet.NOT_FOUND) {
+                    continue;
+                }
+            }
+            index = (int) ((index * (long) size + c) % cells);
+            run += 1;
+            if (run >= n) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("sample text has no %d-grams", n);
+        }
+        _table = new float[(int) cells];
+        float unseen = (float) Math.log(UNSEEN / total);
+        for (int i = 0; i < counts.length; i++) {
+            _table[i] = counts[i] == 0 ? unseen
+                : (float) Math.log((double) counts[i] / total);
+        }
+        _n = n;
+        _size = size;
+        _high = (int) (cells / size);
+    }
+
+    /** Return the length of my sequences. */
+    int length() {
+        return _n;
+    }
+
+    /** Return the log-likelihood of TEXT[0 .. LEN-1], Alphabet indices:
+     *  the sum of those of its sequences of length(). */
+    double score(int[] text, int len) {
+        int index = 0;
+        for (int i = 0; i < _n - 1 && i < len; i++) {
+            index = index * _size + text[i];
+        }
+        double sum = 0;
+        for (int i = _n - 1; i < len; i++) {
+            index = (index % _high) * _size + text[i];
+            sum += _table[index];
+        }
+        return sum;
+    }
+
+    /** Return the index of coincidence of TEXT[0 .. LEN-1], Alphabet
+     *  indices less than COUNTS.length: the chance that two of its
+     *  characters chosen at random are the same.  COUNTS is scratch
+     *  space. */
+    static double indexOfCoincidence(int[] text, int len, int[] counts) {
+        if (len < 2) {
+            return 0;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        for (int i = 0; i < len; i++) {
+            counts[text[i]] += 1;
+        }
+        long pairs = 0;
+        for (int f : counts) {
+            pairs += (long) f * (f - 1);
+        }
+        return (double) pairs / ((long) len * (len - 1));
+    }
+
+    /** Most entries in a table. */
+    static final long MAX_CELLS = 1L << 26;
+
+    /** Occurrences assumed of a sequence never seen. */
+    private static final double UNSEEN = 0.01;
+
+    /** Log-likelihood of each sequence, by index. */
+    private final float[] _table;
+
+    /** Length of my sequences. */
+    private final int _n;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Number of sequences of length _n - 1. */
+    private final int _high;
+}
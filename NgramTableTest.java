@@ -0,0 +1,58 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the NgramTable class.
+ *  @author Brian Chiang
+ */
+public class NgramTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    private static final Alphabet ABC = new Alphabet("ABC");
+
+    /** Return the Alphabet indices of the characters of TEXT. */
+    private static int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ABC.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void checkScore() {
+        NgramTable table = new NgramTable(ABC, 2, "ab, ab  ac!");
+        assertEquals(2, table.length());
+        int[] text = indices("ABAC");
+        double ab = Math.log(2.0 / 5), ba = Math.log(2.0 / 5);
+        double ac = Math.log(1.0 / 5);
+        assertEquals(ab + ba + ac, table.score(text, 4), 1e-5);
+        assertEquals(ab, table.score(text, 2), 1e-5);
+        assertEquals(0, table.score(text, 1), 1e-9);
+        assertEquals(Math.log(0.01 / 5), table.score(indices("CC"), 2),
+                     1e-5);
+    }
+
+    @Test
+    public void checkIndexOfCoincidence() {
+        int[] counts = new int[ABC.size()];
+        assertEquals(1.0, NgramTable.indexOfCoincidence(indices("AAAA"),
+                                                        4, counts), 1e-12);
+        assertEquals(2.0 / 12,
+                     NgramTable.indexOfCoincidence(indices("AABC"), 4,
+                                                   counts), 1e-12);
+        assertEquals(0, NgramTable.indexOfCoincidence(indices("ABC"), 3,
+                                                      counts), 1e-12);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkEmptySample() {
+        new NgramTable(ABC, 3, "ab xyz");
+    }
+}
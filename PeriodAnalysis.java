@@ -0,0 +1,189 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static enigma.EnigmaException.*;
+
+/** How a machine's rotors step from its current settings: the number of
+ *  key presses after which their settings repeat, and how many key
+ *  presses come before they first enter that cycle, which double
+ *  stepping can make nonzero.  Also the cycle structure of the
+ *  machine's substitutions.
+ *
+ *  Nothing is simulated key press by key press.  A rotor's moves depend
+ *  only on the rotors to its right, so the slots from any rotating slot
+ *  K to the fast rotor step on their own, with a period that is found
+ *  from that of the slots to the right of K.  Once those have entered
+ *  their cycle, of P key presses, every P key presses take rotor K from
+ *  some setting to one depending on that setting alone.  Following that
+ *  map from K's setting until it repeats gives the period of slots K on,
+ *  P times the length of the map's cycle, and bounds where the cycle is
+ *  entered, which a binary search then pins down.  Each move is a seek,
+ *  so the work grows with the alphabet size times the cube of the
+ *  number of rotors, unless some rotating rotor has notches at
+ *  consecutive settings, when seek must simulate.
+ *
+ *  A substitution is the reflector's permutation seen through the
+ *  plugboard and the other rotors, so every position has the same cycle
+ *  lengths as the reflector.
+ *  @author Brian Chiang
+ */
+class PeriodAnalysis {
+
+    /** The analysis of MACHINE, which must have rotors inserted, from
+     *  its current settings.  MACHINE itself is not changed. */
+    PeriodAnalysis(Machine machine) {
+        _machine = machine.replicate();
+        _machine.setCompiled(false);
+        _machine.restore(machine.state());
+        int n = _machine.numRotors();
+        _start = settings();
+        _periods = new long[n];
+        long tail = 0, period = 1;
+        int k;
+        try {
+            for (k = n - 1; k > 0 && _machine.getRotor(k).rotates(); k--) {
+                int[] base = settingsAt(tail);
+                int[] seen = new int[_machine.alphabet().size()];
+                Arrays.fill(seen, -1);
+                int count, posn;
+                for (count = 0, posn = base[k]; seen[posn] < 0; count++) {
+                    seen[posn] = count;
+                    base[k] = posn;
+                    _machine.setRotors(base);
+                    _machine.seek(period);
+                    posn = _machine.getRotor(k).setting();
+                }
+                long next = Math.multiplyExact(period, count - seen[posn]);
+                long last =
+                    Math.addExact(tail, Math.multiplyExact(seen[posn],
+                                                           period));
+                Math.addExact(last, next); // firstRepeat looks this far
+                tail = firstRepeat(k, tail, last, next);
+                period = next;
+                _periods[k] = period;
+            }
+        } catch (ArithmeticException excp) {
+            throw error("period exceeds %d key presses", Long.MAX_VALUE);
+        }
+        for (; k >= 0; k--) {
+            _periods[k] = period;
+        }
+        _tail = tail;
+        _period = period;
+        _cycles = cycleLengths();
+    }
+
+    /** Return the number of key presses after which my machine's rotor
+     *  settings repeat, once they have entered their cycle. */
+    long period() {
+        return _period;
+    }
+
+    /** Return the number of key presses before my machine's rotor
+     *  settings enter their cycle. */
+    long tail() {
+        return _tail;
+    }
+
+    /** Return the period of the settings of the rotors in slots K
+     *  through numRotors() - 1 alone. */
+    long period(int k) {
+        return _periods[k];
+    }
+
+    /** Return the number of cycles of each length in the substitution
+     *  at each position of my machine, by length. */
+    Map<Integer, Integer> cycles() {
+        return _cycles;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("period %d after %d; slots",
+                                    _period, _tail));
+        for (int i = 1; i < _periods.length; i++) {
+            result.append(' ').append(_periods[i]);
+        }
+        result.append("; cycles");
+        for (Map.Entry<Integer, Integer> e : _cycles.entrySet()) {
+            result.append(String.format(" %dx%d", e.getValue(), e.getKey()));
+        }
+        return result.toString();
+    }
+
+    /** Return the first key press count T, LO <= T <= HI, at which the
+     *  setting of rotor K equals its setting PERIOD key presses later.
+     *  The rotors to the right of K must have entered their cycle, whose
+     *  length divides PERIOD, by LO, and rotor K must have by HI. */
+    private long firstRepeat(int k, long lo, long hi, long period) {
+        while (lo < hi) {
+            long mid = lo + (hi - lo) / 2;
+            if (settingsAt(mid)[k] == settingsAt(mid + period)[k]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the settings of my machine's rotors after STEPS key presses
+     *  from the settings it was analyzed at. */
+    private int[] settingsAt(long steps) {
+        _machine.setRotors(_start);
+        _machine.seek(steps);
+        return settings();
+    }
+
+    /** Return the current settings of my machine's rotors, by slot. */
+    private int[] settings() {
+        int[] result = new int[_machine.numRotors()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = _machine.getRotor(i).setting();
+        }
+        return result;
+    }
+
+    /** Return the number of cycles of each length in my machine's
+     *  substitution at its starting settings. */
+    private Map<Integer, Integer> cycleLengths() {
+        _machine.setRotors(_start);
+        int size = _machine.alphabet().size();
+        boolean[] done = new boolean[size];
+        TreeMap<Integer, Integer> result = new TreeMap<>();
+        for (int c = 0; c < size; c++) {
+            int length = 0;
+            for (int d = c; !done[d]; d = _machine.substitute(d)) {
+                done[d] = true;
+                length += 1;
+            }
+            if (length > 0) {
+                result.merge(length, 1, Integer::sum);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** A replica of the machine analyzed, moved about freely. */
+    private final Machine _machine;
+
+    /** Settings of the analyzed machine's rotors, by slot. */
+    private final int[] _start;
+
+    /** Period of the rotors from each slot rightward. */
+    private final long[] _periods;
+
+    /** Key presses before the settings enter their cycle. */
+    private final long _tail;
+
+    /** Period of all the rotors. */
+    private final long _period;
+
+    /** Number of cycles of each length in a substitution. */
+    private final Map<Integer, Integer> _cycles;
+}
@@ -0,0 +1,208 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PeriodAnalysis class.
+ *  @author Brian Chiang
+ */
+public class PeriodAnalysisTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random permutation of ALPHA, in cycle notation, using
+     *  RANDOM, with no fixed points iff DERANGED. */
+    private static String randomCycles(String alpha, Random random,
+                                       boolean deranged) {
+        ArrayList<Character> chars = new ArrayList<>();
+        for (char c : alpha.toCharArray()) {
+            chars.add(c);
+        }
+        java.util.Collections.shuffle(chars, random);
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < chars.size()) {
+            int len = deranged ? 2 : 1 + random.nextInt(3);
+            if (i + len > chars.size() || chars.size() - i - len == 1) {
+                len = chars.size() - i;
+            }
+            result.append('(');
+            for (int j = i; j < i + len; j++) {
+                result.append(chars.get(j));
+            }
+            result.append(')');
+            i += len;
+        }
+        return result.toString();
+    }
+
+    /** Return a machine with alphabet ALPHA, NUMROTORS slots and PAWLS
+     *  pawls, with random rotors, notches, settings and rings drawn
+     *  from RANDOM. */
+    private static Machine randomMachine(String alpha, int numRotors,
+                                         int pawls, Random random) {
+        Alphabet alphabet = new Alphabet(alpha);
+        ArrayList<Rotor> all = new ArrayList<>();
+        String[] names = new String[numRotors];
+        StringBuilder setting = new StringBuilder();
+        StringBuilder rings = new StringBuilder();
+        for (int i = 0; i < numRotors; i++) {
+            names[i] = "R" + i;
+            boolean reflector = i == 0;
+            Permutation perm =
+                new Permutation(randomCycles(alpha, random, reflector),
+                                alphabet);
+            if (reflector) {
+                all.add(new Reflector(names[i], perm));
+                continue;
+            } else if (i < numRotors - pawls) {
+                all.add(new FixedRotor(names[i], perm));
+            } else {
+                StringBuilder notches = new StringBuilder();
+                for (char c : alpha.toCharArray()) {
+                    if (random.nextInt(4) == 0) {
+                        notches.append(c);
+                    }
+                }
+                all.add(new MovingRotor(names[i], perm, notches.toString()));
+            }
+            setting.append(alpha.charAt(random.nextInt(alpha.length())));
+            rings.append(alpha.charAt(random.nextInt(alpha.length())));
+        }
+        Machine mach = new Machine(alphabet, numRotors, pawls, all);
+        mach.insertRotors(names);
+        mach.setRotors(setting.toString());
+        mach.setRings(rings.toString());
+        return mach;
+    }
+
+    /** Return the settings of MACH's rotors from slot K rightward. */
+    private static String settings(Machine mach, int k) {
+        StringBuilder result = new StringBuilder();
+        for (int i = k; i < mach.numRotors(); i++) {
+            result.append((char) mach.getRotor(i).setting());
+        }
+        return result.toString();
+    }
+
+    /** Return the tail and period of the rotors of MACH from slot K
+     *  rightward, found by stepping MACH until their settings repeat. */
+    private static long[] simulate(Machine mach, int k) {
+        HashMap<String, Long> seen = new HashMap<>();
+        for (long t = 0; true; t++) {
+            Long first = seen.putIfAbsent(settings(mach, k), t);
+            if (first != null) {
+                return new long[] { first, t - first };
+            }
+            mach.convert(0);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkNavalPeriod() {
+        Alphabet az = new Alphabet(UPPER_STRING);
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), az)));
+        all.add(new FixedRotor("Beta",
+                               new Permutation(NAVALA.get("Beta"), az)));
+        all.add(new MovingRotor("III",
+                                new Permutation(NAVALA.get("III"), az), "V"));
+        all.add(new MovingRotor("IV",
+                                new Permutation(NAVALA.get("IV"), az), "J"));
+        all.add(new MovingRotor("I",
+                                new Permutation(NAVALA.get("I"), az), "Q"));
+        Machine mach = new Machine(az, 5, 3, all);
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setRotors("AAJA");
+        String before = settings(mach, 1);
+        PeriodAnalysis analysis = new PeriodAnalysis(mach);
+        assertEquals(26 * 25 * 26, analysis.period());
+        assertEquals(26, analysis.period(4));
+        assertEquals(26 * 25, analysis.period(3));
+        assertEquals(analysis.period(), analysis.period(1));
+        assertEquals(1, analysis.tail());
+        assertEquals(Integer.valueOf(13), analysis.cycles().get(2));
+        assertEquals(1, analysis.cycles().size());
+        assertEquals(before, settings(mach, 1));
+    }
+
+    @Test
+    public void checkAgainstSimulation() {
+        Random random = new Random(0x5eed);
+        for (int trial = 0; trial < 40; trial++) {
+            int numRotors = 3 + random.nextInt(3);
+            int pawls = 1 + random.nextInt(numRotors - 1);
+            String alpha = UPPER_STRING.substring(0, 4 + random.nextInt(4));
+            Machine mach = randomMachine(alpha, numRotors, pawls, random);
+            PeriodAnalysis analysis = new PeriodAnalysis(mach);
+            for (int k = numRotors - 1; k > 0; k--) {
+                Machine copy = mach.replicate();
+                copy.restore(mach.state());
+                long[] expected = simulate(copy, k);
+                assertEquals(msg("trial " + trial, "period of slot %d", k),
+                             expected[1], analysis.period(k));
+                if (k == 1) {
+                    assertEquals(msg("trial " + trial, "tail"),
+                                 expected[0], analysis.tail());
+                    assertEquals(expected[1], analysis.period());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkCyclesAtEveryPosition() {
+        Random random = new Random(7);
+        String alpha = UPPER_STRING.substring(0, 10);
+        Machine mach = randomMachine(alpha, 4, 2, random);
+        mach.setPlugboard(new Permutation("(AB)(CDE)", mach.alphabet()));
+        Map<Integer, Integer> cycles = new PeriodAnalysis(mach).cycles();
+        assertEquals(Integer.valueOf(5), cycles.get(2));
+        for (int t = 0; t < 200; t++) {
+            assertEquals(cycles, new PeriodAnalysis(mach).cycles());
+            mach.convert(0);
+        }
+    }
+
+    @Test
+    public void checkLargeMachine() {
+        Random random = new Random(3);
+        String alpha = UPPER_STRING + "abcdefghijklmnopqrstuvwxyz0123456789";
+        Alphabet alphabet = new Alphabet(alpha);
+        ArrayList<Rotor> all = new ArrayList<>();
+        String[] names = new String[8];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "R" + i;
+            Permutation perm =
+                new Permutation(randomCycles(alpha, random, i == 0),
+                                alphabet);
+            if (i == 0) {
+                all.add(new Reflector(names[i], perm));
+            } else {
+                all.add(new MovingRotor(names[i], perm, "Aa0"));
+            }
+        }
+        Machine mach = new Machine(alphabet, names.length, 7, all);
+        mach.insertRotors(names);
+        mach.setRotors("ABCDEFG");
+        PeriodAnalysis analysis = new PeriodAnalysis(mach);
+        assertEquals(62, analysis.period(7));
+        assertTrue(analysis.period() > 1000000000000L);
+        assertEquals(0, analysis.period() % analysis.period(2));
+    }
+}
@@ -18,31 +18,74 @@ class Permutation {
         addCycle(cycles);
     }
 
+    /** Set this Permutation to the one that takes each index i of
+     *  ALPHABET to FORWARD[i], whose inverse takes i to INVERSE[i].  The
+     *  tables are used as they are, without checking that they describe
+     *  a permutation and its inverse, so they must come from a trusted
+     *  source such as a ConfigSnapshot. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm. The cycles are compiled into _forward and _inverse, so
+     *  that permute and invert are single table lookups. */
     private void addCycle(String cycle) {
-        int open = 0;
-        int close = 0;
+        int size = size();
+        _forward = new int[size];
+        _inverse = new int[size];
+        for (int i = 0; i < size; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        boolean[] used = new boolean[size];
+        boolean open = false;
+        int first = -1;
+        int prev = -1;
         for (int i = 0; i < cycle.length(); i++) {
             char currentChar = cycle.charAt(i);
             if (currentChar == '(') {
-                open++;
+                if (open) {
+                    throw error("# opening and closing parenthesis "
+                                + "do not match");
+                }
+                open = true;
+                first = -1;
+                prev = -1;
             } else if (currentChar == ')') {
-                close++;
+                if (!open) {
+                    throw error("# opening and closing parenthesis "
+                                + "do not match");
+                }
+                if (prev >= 0) {
+                    _forward[prev] = first;
+                    _inverse[first] = prev;
+                }
+                open = false;
             } else if (!Character.isWhitespace(currentChar)) {
                 if (!_alphabet.contains(currentChar)) {
                     throw error("Chara %s not in _ALPHABET", currentChar);
+                }
+                if (!open) {
+                    throw error("%s is not inside a cycle", currentChar);
+                }
+                int k = _alphabet.toInt(currentChar);
+                if (used[k]) {
+                    throw error("%s repeated in _CYCLES", currentChar);
+                }
+                used[k] = true;
+                if (prev >= 0) {
+                    _forward[prev] = k;
+                    _inverse[k] = prev;
                 } else {
-                    for (int j = i + 1; j < cycle.length(); j++) {
-                        char comparedChar = cycle.charAt(j);
-                        if (currentChar == comparedChar) {
-                            throw error("%s repeated in _CYCLES", currentChar);
-                        }
-                    }
+                    first = k;
                 }
+                prev = k;
             }
         }
-        if (open != close) {
+        if (open) {
             throw error("# opening and closing parenthesis do not match");
         }
         _cycles = cycle;
@@ -65,54 +108,22 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char inputChar = _alphabet.toChar(wrap(p));
-        int cycleInt = _cycles.indexOf(inputChar);
-        char outputChar;
-        if (cycleInt < 0) {
-            outputChar = inputChar;
-        } else {
-            outputChar = _cycles.charAt(cycleInt + 1);
-            if (outputChar == ')') {
-                for (int i = cycleInt; i >= 0; i--) {
-                    if (_cycles.charAt(i) == '(') {
-                        outputChar = _cycles.charAt(i + 1);
-                        break;
-                    }
-                }
-            }
-        }
-        return _alphabet.toInt(outputChar);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char outputChar = _alphabet.toChar(wrap(c));
-        int cycleInt = _cycles.indexOf(outputChar);
-        char inputChar;
-        if (cycleInt < 0) {
-            inputChar = outputChar;
-        } else {
-            inputChar = _cycles.charAt(cycleInt - 1);
-            if (inputChar == '(') {
-                for (int i = cycleInt; i < _cycles.length(); i++) {
-                    if (_cycles.charAt(i) == ')') {
-                        inputChar = _cycles.charAt(i - 1);
-                        break;
-                    }
-                }
-            }
-        }
-        return _alphabet.toInt(inputChar);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (!_alphabet.contains(p)) {
+        int inputInt = _alphabet.toInt(p);
+        if (inputInt == Alphabet.NOT_FOUND) {
             throw error("Character %s not found in _ALPHABET", p);
         }
-        int inputInt = _alphabet.toInt(p);
         int outputInt = permute(inputInt);
         char charOutput = _alphabet.toChar(outputInt);
         return charOutput;
@@ -120,15 +131,38 @@ class Permutation {
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (!_alphabet.contains(c)) {
+        int outputInt = _alphabet.toInt(c);
+        if (outputInt == Alphabet.NOT_FOUND) {
             throw error("Character %s not found in alphabet", c);
         }
-        int outputInt = _alphabet.toInt(c);
         int inputInt = invert(outputInt);
         char charInput = _alphabet.toChar(inputInt);
         return charInput;
     }
 
+    /** Return the cycles used to initialize this Permutation, in the
+     *  same notation accepted by the constructor.  For a Permutation made
+     *  from tables, these are its cycles of two or more characters. */
+    String cycles() {
+        if (_cycles == null) {
+            StringBuilder cycles = new StringBuilder();
+            boolean[] seen = new boolean[size()];
+            for (int i = 0; i < size(); i++) {
+                if (seen[i] || _forward[i] == i) {
+                    continue;
+                }
+                cycles.append(cycles.length() == 0 ? "(" : " (");
+                for (int k = i; !seen[k]; k = _forward[k]) {
+                    seen[k] = true;
+                    cycles.append(_alphabet.toChar(k));
+                }
+                cycles.append(")");
+            }
+            _cycles = cycles.toString();
+        }
+        return _cycles;
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -138,8 +172,7 @@ class Permutation {
      *  permutation for which no value maps to itself). */
     boolean derangement() {
         for (int i = 0; i < size(); i++) {
-            int outputInt = permute(i);
-            if (i == outputInt) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
@@ -151,4 +184,10 @@ class Permutation {
 
     /** Cycles of this permutation. */
     private String _cycles;
+
+    /** Index of the result of permuting each index of the alphabet. */
+    private int[] _forward;
+
+    /** Index of the result of inverting each index of the alphabet. */
+    private int[] _inverse;
 }
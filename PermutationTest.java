@@ -51,4 +51,31 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalA() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void checkCyclesKept() {
+        perm = new Permutation("(AELTPHQXRU) (BKNW)", UPPER);
+        assertEquals("(AELTPHQXRU) (BKNW)", perm.cycles());
+        assertEquals('A', perm.permute('U'));
+        assertEquals('W', perm.invert('B'));
+        assertEquals('S', perm.permute('S'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedChar() {
+        perm = new Permutation("(ABC) (DA)", UPPER);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkUnbalancedCycle() {
+        perm = new Permutation("(ABC (DE)", UPPER);
+    }
+
 }
@@ -0,0 +1,275 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** Converts message lines in three stages on three threads, so that
+ *  reading, converting and writing a single long message overlap.  The
+ *  caller's thread reads, checks and parses the input, handing message
+ *  lines to add and the State of each settings line to begin; a
+ *  converter thread runs a replica of the caller's machine over them; and
+ *  a writer thread formats the results in groups and writes them.
+ *
+ *  The stages pass chunks of text through one preallocated ring of
+ *  slots, each holding up to SLOT_SIZE characters of lines ended by
+ *  LINE_END.  A slot goes from the reader to the converter to the writer
+ *  and back to the reader, and each of those handoffs has a single
+ *  producer and a single consumer, so needs only a cursor per stage: the
+ *  number of slots it has finished.  A stage that gets ahead of the one
+ *  after it waits, spinning briefly and then parking, so memory use is
+ *  fixed.  If a stage fails, all of them stop, and the reader's next
+ *  call, or finish, reports the failure.
+ *  @author Brian Chiang
+ */
+class Pipeline {
+
+    /** A pipeline converting with replicas of TEMPLATE and writing to
+     *  OUTPUT through a ring of SLOTS slots (a power of 2) of SLOTSIZE
+     *  characters each. */
+    Pipeline(Machine template, GroupWriter output, int slots, int slotSize) {
+        if (Integer.bitCount(slots) != 1 || slotSize < 2) {
+            throw error("bad pipeline size");
+        }
+        _slots = new Slot[slots];
+        for (int i = 0; i < slots; i++) {
+            _slots[i] = new Slot(slotSize);
+        }
+        _read = new AtomicLong();
+        _converted = new AtomicLong();
+        _written = new AtomicLong();
+        _readDone = new AtomicBoolean();
+        _convertDone = new AtomicBoolean();
+        _failure = new AtomicReference<>();
+        Machine machine = template.replicate();
+        _converter = new Thread(() -> run(() -> convert(machine)),
+                                "enigma-convert");
+        _writer = new Thread(() -> run(() -> write(output)), "enigma-write");
+        _converter.setDaemon(true);
+        _writer.setDaemon(true);
+        _converter.start();
+        _writer.start();
+        _current = claim();
+    }
+
+    /** A pipeline converting with replicas of TEMPLATE and writing to
+     *  OUTPUT through a ring of the default size. */
+    Pipeline(Machine template, GroupWriter output) {
+        this(template, output, SLOTS, SLOT_SIZE);
+    }
+
+    /** Convert the messages that follow from STATE. */
+    void begin(Machine.State state) {
+        if (_current._length > 0) {
+            publish();
+        }
+        _current._state = state;
+    }
+
+    /** Add BUFFER[START .. START+LEN-1], a piece of a message line, ending
+     *  its line iff LINEEND. */
+    void add(char[] buffer, int start, int len, boolean lineEnd) {
+        while (true) {
+            Slot slot = _current;
+            int n = Math.min(len, slot._text.length - slot._length - 1);
+            System.arraycopy(buffer, start, slot._text, slot._length, n);
+            slot._length += n;
+            start += n;
+            len -= n;
+            if (len == 0) {
+                if (lineEnd) {
+                    slot._text[slot._length] = LINE_END;
+                    slot._length += 1;
+                }
+                if (slot._length >= slot._text.length - 1) {
+                    publish();
+                }
+                return;
+            }
+            publish();
+        }
+    }
+
+    /** Convert and write everything added so far, stop my threads, and
+     *  report any failure. */
+    void finish() {
+        try {
+            if (_failure.get() == null && _current._length > 0) {
+                publish();
+            }
+        } finally {
+            _readDone.set(true);
+        }
+        try {
+            _converter.join();
+            _writer.join();
+        } catch (InterruptedException excp) {
+            _failure.compareAndSet(null, excp);
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    /** Hand the current slot to the converter and claim the next. */
+    private void publish() {
+        _filled += 1;
+        _read.setRelease(_filled);
+        _current = claim();
+    }
+
+    /** Return the next slot for the reader, empty, once the writer is
+     *  done with it. */
+    private Slot claim() {
+        if (!await(_written, _filled - _slots.length + 1, null)) {
+            checkFailure();
+        }
+        Slot slot = _slots[(int) _filled & (_slots.length - 1)];
+        slot._state = null;
+        slot._length = 0;
+        return slot;
+    }
+
+    /** The converter stage: convert each slot the reader publishes on
+     *  MACHINE. */
+    private void convert(Machine machine) {
+        boolean ready = false;
+        for (long n = 0; await(_read, n + 1, _readDone); n += 1) {
+            Slot slot = _slots[(int) n & (_slots.length - 1)];
+            if (slot._state != null) {
+                machine.restore(slot._state);
+                ready = true;
+            }
+            char[] text = slot._text;
+            int start = 0;
+            for (int i = 0; i <= slot._length; i++) {
+                if (i == slot._length || text[i] == LINE_END) {
+                    if (ready) {
+                        machine.convert(text, start, i - start);
+                    }
+                    start = i + 1;
+                }
+            }
+            _converted.setRelease(n + 1);
+        }
+        _convertDone.set(true);
+    }
+
+    /** The writer stage: write each converted slot to OUTPUT. */
+    private void write(GroupWriter output) {
+        for (long n = 0; await(_converted, n + 1, _convertDone); n += 1) {
+            Slot slot = _slots[(int) n & (_slots.length - 1)];
+            char[] text = slot._text;
+            int start = 0;
+            for (int i = 0; i <= slot._length; i++) {
+                if (i == slot._length || text[i] == LINE_END) {
+                    output.write(text, start, i - start);
+                    if (i < slot._length) {
+                        output.endLine();
+                    }
+                    start = i + 1;
+                }
+            }
+            _written.setRelease(n + 1);
+        }
+    }
+
+    /** Run STAGE, recording any failure and stopping all stages. */
+    private void run(Runnable stage) {
+        try {
+            stage.run();
+        } catch (RuntimeException | Error excp) {
+            _failure.compareAndSet(null, excp);
+        }
+    }
+
+    /** Wait until CURSOR reaches TARGET, returning true, or return false
+     *  if some stage has failed or, if DONE is not null, DONE becomes
+     *  true while CURSOR is short of TARGET. */
+    private boolean await(AtomicLong cursor, long target,
+                          AtomicBoolean done) {
+        for (int spins = 0; cursor.getAcquire() < target; spins += 1) {
+            if (_failure.get() != null) {
+                return false;
+            }
+            if (done != null && done.get()) {
+                return cursor.getAcquire() >= target;
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return _failure.get() == null;
+    }
+
+    /** Throw the failure of any stage as an EnigmaException. */
+    private void checkFailure() {
+        Throwable failure = _failure.get();
+        if (failure instanceof EnigmaException) {
+            throw (EnigmaException) failure;
+        } else if (failure != null) {
+            throw error("pipeline failed: %s", failure);
+        }
+    }
+
+    /** A chunk of text passed between the stages. */
+    private static class Slot {
+
+        /** An empty slot for SIZE characters. */
+        Slot(int size) {
+            _text = new char[size];
+        }
+
+        /** If not null, the state to convert my text from. */
+        private Machine.State _state;
+
+        /** My lines, each ended by LINE_END but perhaps the last. */
+        private final char[] _text;
+
+        /** Number of characters in _text. */
+        private int _length;
+    }
+
+    /** Default number of slots. */
+    static final int SLOTS = 16;
+
+    /** Default number of characters in a slot. */
+    static final int SLOT_SIZE = 1 << 14;
+
+    /** Times a waiting stage spins before it starts to park. */
+    private static final int SPINS = 1 << 8;
+
+    /** Time a waiting stage parks between checks. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** Marks the end of a line in a slot.  It is never in a piece of a
+     *  line, and never converted. */
+    private static final char LINE_END = '\n';
+
+    /** The ring of slots. */
+    private final Slot[] _slots;
+
+    /** Numbers of slots published by the reader, converted, and
+     *  written. */
+    private final AtomicLong _read, _converted, _written;
+
+    /** Set when the reader, or the converter, has finished. */
+    private final AtomicBoolean _readDone, _convertDone;
+
+    /** The first failure of any stage, or null. */
+    private final AtomicReference<Throwable> _failure;
+
+    /** Threads of the converter and writer stages. */
+    private final Thread _converter, _writer;
+
+    /** Number of slots the reader has published (its own copy of
+     *  _read). */
+    private long _filled;
+
+    /** The slot the reader is filling. */
+    private Slot _current;
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Brian Chiang
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkOrderedOutput() {
+        Random random = new Random(7);
+        Machine tracker = standardMachine();
+        Machine serial = standardMachine();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        GroupWriter expectedOut =
+            new GroupWriter(expected, StandardCharsets.UTF_8);
+        GroupWriter actualOut = new GroupWriter(actual, StandardCharsets.UTF_8);
+        Pipeline pipeline = new Pipeline(tracker, actualOut, 4, 37);
+        expectedOut.endLine();
+        pipeline.add(new char[0], 0, 0, true);
+        for (int b = 0; b < 20; b++) {
+            String settings =
+                STANDARD_SETTINGS[random.nextInt(STANDARD_SETTINGS.length)];
+            Main.setUp(tracker, settings);
+            Main.setUp(serial, settings);
+            pipeline.begin(tracker.state());
+            for (int k = random.nextInt(4); k > 0; k--) {
+                char[] line = message(random, random.nextInt(300));
+                char[] copy = line.clone();
+                serial.convert(copy, 0, copy.length);
+                expectedOut.write(copy, 0, copy.length);
+                expectedOut.endLine();
+                for (int start = 0; start < line.length || start == 0;
+                     start += PIECE) {
+                    int n = Math.min(PIECE, line.length - start);
+                    pipeline.add(line, start, n, start + n == line.length);
+                }
+            }
+        }
+        pipeline.finish();
+        expectedOut.flush();
+        actualOut.flush();
+        assertEquals(expected.toString(StandardCharsets.UTF_8),
+                     actual.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkFailure() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken");
+            }
+        };
+        Machine machine = standardMachine();
+        Main.setUp(machine, STANDARD_SETTINGS[0]);
+        Pipeline pipeline =
+            new Pipeline(machine, new GroupWriter(broken), 2, 16);
+        pipeline.begin(machine.state());
+        char[] line = message(new Random(1), 4 * GroupWriter.BUFFER_SIZE);
+        try {
+            for (int i = 0; i < 64; i++) {
+                pipeline.add(line, 0, line.length, true);
+            }
+            pipeline.finish();
+            fail("write error not reported");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("broken"));
+        }
+    }
+
+    /* ***** HELPERS ***** */
+
+    /** Return a message line of LEN letters and blanks chosen by
+     *  RANDOM. */
+    private static char[] message(Random random, int len) {
+        char[] line = new char[len];
+        for (int i = 0; i < len; i++) {
+            line[i] = i % 7 == 3 ? ' ' : (char) ('A' + random.nextInt(26));
+        }
+        return line;
+    }
+
+    /** Largest piece of a line given to the pipeline at once. */
+    private static final int PIECE = 50;
+}
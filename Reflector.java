@@ -10,8 +10,14 @@ class Reflector extends FixedRotor {
     /** A non-moving rotor named NAME whose permutation at the 0 setting
      * is PERM. */
     Reflector(String name, Permutation perm) {
-        super(name, perm);
-        if (!perm.derangement()) {
+        this(new RotorWiring(name, perm, ""));
+    }
+
+    /** A reflector with WIRING, whose permutation must be a
+     *  derangement. */
+    Reflector(RotorWiring wiring) {
+        super(wiring);
+        if (!wiring.permutation().derangement()) {
             throw error("there is no derangement in reflector");
         }
     }
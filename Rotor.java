@@ -2,15 +2,21 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor
+ *  is its shared, immutable RotorWiring plus its own setting and ring,
+ *  so copies are cheap and each machine can have its own.
  *  @author Brian Chiang
  */
-class Rotor {
+class Rotor implements Cloneable {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
-        _name = name;
-        _permutation = perm;
+        this(new RotorWiring(name, perm, ""));
+    }
+
+    /** A rotor with WIRING, at its 0 setting and ring. */
+    Rotor(RotorWiring wiring) {
+        _wiring = wiring;
         _setting = 0;
         _haveRotated = false;
         _ringPosition = 0;
@@ -18,22 +24,27 @@ class Rotor {
 
     /** Return my name. */
     String name() {
-        return _name;
+        return _wiring.name();
+    }
+
+    /** Return my wiring, which I may share with other rotors. */
+    RotorWiring wiring() {
+        return _wiring;
     }
 
     /** Return my alphabet. */
     Alphabet alphabet() {
-        return _permutation.alphabet();
+        return _wiring.permutation().alphabet();
     }
 
     /** Return my permutation. */
     Permutation permutation() {
-        return _permutation;
+        return _wiring.permutation();
     }
 
     /** Return the size of my alphabet. */
     int size() {
-        return _permutation.size();
+        return _wiring.size();
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -63,7 +74,11 @@ class Rotor {
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting = permutation().wrap(alphabet().toInt(cposn));
+        int posn = alphabet().toInt(cposn);
+        if (posn == Alphabet.NOT_FOUND) {
+            throw error("%s is not in ALPHA (not a valid setting)", cposn);
+        }
+        _setting = posn;
     }
 
     /** Set _haveRotated to B. */
@@ -76,9 +91,20 @@ class Rotor {
         return _ringPosition;
     }
 
+    /** Set setting() to POSN and ringSetting() to RING, as reported by
+     *  another rotor with my wiring. */
+    void restore(int posn, int ring) {
+        _setting = posn;
+        _ringPosition = ring;
+    }
+
     /** Set rings to character RPOSN. */
     void setRing(char rposn) {
-        _ringPosition = alphabet().toInt(rposn);
+        int posn = alphabet().toInt(rposn);
+        if (posn == Alphabet.NOT_FOUND) {
+            throw error("%s is not in ALPHA (not a valid ring)", rposn);
+        }
+        _ringPosition = posn;
         set(_setting - _ringPosition);
     }
 
@@ -88,6 +114,10 @@ class Rotor {
         if (p >= size()) {
             throw error("%d is not within the _ALPHABET size", p);
         }
+        char[] table = _wiring.forwardTable();
+        if (table != null) {
+            return table[_setting * size() + p];
+        }
         int contact = permutation().wrap(p + setting());
         int innerOutput = permutation().permute(contact);
         int output = permutation().wrap(innerOutput - setting());
@@ -100,32 +130,72 @@ class Rotor {
         if (e >= size()) {
             throw error("%d is not within alphabet size", e);
         }
+        char[] table = _wiring.backwardTable();
+        if (table != null) {
+            return table[_setting * size() + e];
+        }
         int contact = permutation().wrap(e + setting());
         int innerInput = permutation().invert(contact);
         int input = permutation().wrap(innerInput - setting());
         return input;
     }
 
+    /** Return the characters at which I have notches, in the form given
+     *  to the MovingRotor constructor.  Only moving rotors have any. */
+    String notches() {
+        return _wiring.notches();
+    }
+
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
         return false;
     }
 
+    /** Returns true iff I would be at a notch at setting POSN. */
+    boolean atNotch(int posn) {
+        return false;
+    }
+
+    /** Returns the number of times I can advance before I am at a
+     *  notch: 0 if I am at one now, and Integer.MAX_VALUE if I never
+     *  will be. */
+    int stepsToNotch() {
+        return Integer.MAX_VALUE;
+    }
+
+    /** Returns the number of the LEN settings POSN, POSN+1, ... (modulo
+     *  size()) at which I would be at a notch. */
+    long notchesFrom(int posn, long len) {
+        return 0;
+    }
+
+    /** Returns true iff two of my notches are at consecutive settings. */
+    boolean adjacentNotches() {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor sharing my wiring, with my current setting and
+     *  ring, that moves independently of me. */
+    Rotor copy() {
+        try {
+            return (Rotor) clone();
+        } catch (CloneNotSupportedException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
     @Override
     public String toString() {
-        return "Rotor " + _name;
+        return "Rotor " + name();
     }
 
-    /** My name. */
-    private final String _name;
-
-    /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    /** My name, permutation and notches. */
+    private final RotorWiring _wiring;
 
     /** My Setting. */
     private int _setting;
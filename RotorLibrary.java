@@ -0,0 +1,160 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to machines, indexed by name.  A rotor may be
+ *  added ready-made, or defined by its type, notches and a source of its
+ *  wiring, in which case the wiring is only compiled, and the rotor only
+ *  built, when get first asks for it, so that a large library costs time
+ *  and memory only for the rotors actually used.
+ *
+ *  The rotors of a library are prototypes: machines insert copies of
+ *  them, which share their RotorWiring, and never move the prototypes
+ *  themselves.  Once all its rotors are added or defined, a library may
+ *  be shared by any number of machines on any number of threads.
+ *
+ *  The expanded tables of the wirings a library builds are charged to a
+ *  RotorWiring.Budget of its own, so each configuration has its own
+ *  limit, which is released when the library is no longer used.
+ *  @author Brian Chiang
+ */
+class RotorLibrary {
+
+    /** An empty library whose wirings may expand their tables up to
+     *  RotorWiring.MAX_EXPANDED_BYTES in all. */
+    RotorLibrary() {
+        this(RotorWiring.MAX_EXPANDED_BYTES);
+    }
+
+    /** An empty library whose wirings may expand their tables up to
+     *  EXPANDED bytes in all; 0 turns expansion off. */
+    RotorLibrary(long expanded) {
+        _entries = new LinkedHashMap<>();
+        _built = new ConcurrentHashMap<>();
+        _budget = new RotorWiring.Budget(expanded);
+    }
+
+    /** Add ROTOR under its name. */
+    void add(Rotor rotor) {
+        if (_entries.containsKey(rotor.name())) {
+            throw error("%s ROTOR is defined twice", rotor.name());
+        }
+        _entries.put(rotor.name(), new Entry(rotor.reflecting() ? 'R'
+                                             : rotor.rotates() ? 'M' : 'N',
+                                             rotor.notches(), null));
+        _built.put(rotor.name(), rotor);
+    }
+
+    /** Define the rotor NAME of TYPE 'M' (moving, with NOTCHES), 'N'
+     *  (fixed) or 'R' (reflector), whose permutation will be supplied by
+     *  WIRING when it is first needed.  Errors in the wiring or notches
+     *  are reported then. */
+    void define(String name, char type, String notches,
+                Supplier<Permutation> wiring) {
+        if (type != 'M' && type != 'N' && type != 'R') {
+            throw error("Rotor is unavailable");
+        }
+        if (_entries.containsKey(name)) {
+            throw error("%s ROTOR is defined twice", name);
+        }
+        _entries.put(name, new Entry(type, notches, wiring));
+    }
+
+    /** Return the prototype of the rotor named NAME, building it if
+     *  necessary, or null if I have no such rotor.  The same rotor is
+     *  returned for NAME each time, on every thread. */
+    Rotor get(String name) {
+        Rotor r = _built.get(name);
+        if (r == null) {
+            Entry entry = _entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+            r = _built.computeIfAbsent(name,
+                                       n -> entry.build(n, _budget));
+        }
+        return r;
+    }
+
+    /** Return true iff I have a rotor named NAME. */
+    boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Return the number of rotors I have. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the number of my rotors that have been built. */
+    int built() {
+        return _built.size();
+    }
+
+    /** Return the total size in bytes of the expanded tables of the
+     *  wirings I have built. */
+    long expandedBytes() {
+        return _budget.used();
+    }
+
+    /** Return all my rotors in the order they were added or defined,
+     *  building any not yet built. */
+    List<Rotor> rotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : _entries.keySet()) {
+            rotors.add(get(name));
+        }
+        return rotors;
+    }
+
+    /** What is known about a rotor before it is built. */
+    private static class Entry {
+
+        /** An entry for a rotor of TYPE with NOTCHES whose permutation
+         *  comes from WIRING. */
+        Entry(char type, String notches, Supplier<Permutation> wiring) {
+            _type = type;
+            _notches = notches;
+            _wiring = wiring;
+        }
+
+        /** Return a new rotor named NAME as described by me, charging
+         *  its expanded tables to BUDGET. */
+        Rotor build(String name, RotorWiring.Budget budget) {
+            RotorWiring wiring =
+                new RotorWiring(name, _wiring.get(), _notches, budget);
+            if (_type == 'M') {
+                return new MovingRotor(wiring);
+            } else if (_type == 'N') {
+                return new FixedRotor(wiring);
+            } else {
+                return new Reflector(wiring);
+            }
+        }
+
+        /** 'M', 'N' or 'R'. */
+        private final char _type;
+
+        /** Notches of a moving rotor. */
+        private final String _notches;
+
+        /** Source of my permutation. */
+        private final Supplier<Permutation> _wiring;
+    }
+
+    /** My entries by name, in the order added. */
+    private final LinkedHashMap<String, Entry> _entries;
+
+    /** The prototypes I have built or been given, by name. */
+    private final ConcurrentHashMap<String, Rotor> _built;
+
+    /** What the expanded tables of the wirings I build are charged
+     *  to. */
+    private final RotorWiring.Budget _budget;
+}
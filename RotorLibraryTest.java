@@ -0,0 +1,124 @@
+package enigma;
+
+import java.io.StringReader;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the RotorLibrary class.
+ *  @author Brian Chiang
+ */
+public class RotorLibraryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkLazyBuild() {
+        Alphabet abc = new Alphabet("ABCD");
+        int[] compiled = new int[1];
+        RotorLibrary library = new RotorLibrary();
+        library.define("X", 'M', "B", () -> {
+            compiled[0] += 1;
+            return new Permutation("(ABCD)", abc);
+        });
+        library.define("Y", 'R', "", () -> new Permutation("(AB) (CD)", abc));
+        assertEquals(2, library.size());
+        assertEquals(0, library.built());
+        assertTrue(library.contains("X"));
+        assertNull(library.get("Z"));
+
+        Rotor x = library.get("X");
+        assertSame(x, library.get("X"));
+        assertEquals(1, library.built());
+        assertTrue(x.rotates());
+        assertEquals("B", x.notches());
+        assertEquals(1, x.convertForward(0));
+
+        assertEquals(1, compiled[0]);
+        assertTrue(library.get("Y").reflecting());
+        assertEquals(2, library.built());
+
+        library.define("F", 'N', "", () -> new Permutation("(AC)", abc));
+        Machine m1 = new Machine(abc, 3, 1, library);
+        Machine m2 = m1.replicate();
+        String[] names = { "Y", "F", "X" };
+        m1.insertRotors(names);
+        m2.insertRotors(names);
+        assertNotSame(m1.getRotor(2), m2.getRotor(2));
+        assertNotSame(x, m1.getRotor(2));
+        assertSame(x.wiring(), m2.getRotor(2).wiring());
+        assertEquals(1, compiled[0]);
+    }
+
+    @Test
+    public void checkDefinitionErrors() {
+        RotorLibrary library = new RotorLibrary();
+        library.define("X", 'N', "", () -> null);
+        try {
+            library.define("X", 'N', "", () -> null);
+            fail("duplicate rotor accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            library.define("W", 'Q', "", () -> null);
+            fail("bad rotor type accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkUnusedRotorsNotCompiled() {
+        Machine mach = Main.readConfig(new Scanner(new StringReader(
+            "ABCD\n 3 1\n"
+            + " R R (AB) (CD)\n"
+            + " F N (ABC)\n"
+            + " M MA (ABCD)\n"
+            + " BAD MA (AE)\n")));
+        Main.setUp(mach, "* R F M AA");
+        assertEquals(3, mach.library().built());
+        try {
+            Main.setUp(mach, "* R F BAD AA");
+            fail("bad rotor accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkExpansionBudget() {
+        Alphabet abc = new Alphabet("ABCD");
+        int bytes = 2 * 4 * 4 * Character.BYTES;
+        RotorLibrary[] libraries = {
+            new RotorLibrary(bytes), new RotorLibrary(bytes),
+            new RotorLibrary(0),
+        };
+        for (RotorLibrary library : libraries) {
+            library.define("X", 'M', "B", () -> new Permutation("(ABCD)",
+                                                                abc));
+            library.define("Y", 'N', "", () -> new Permutation("(AC)", abc));
+        }
+        for (int k = 0; k < 2; k++) {
+            Rotor x = libraries[k].get("X");
+            Rotor y = libraries[k].get("Y");
+            assertNotNull(x.wiring().forwardTable());
+            assertNull(y.wiring().forwardTable());
+            assertEquals(bytes, libraries[k].expandedBytes());
+            assertEquals(bytes, x.wiring().expandedBytes());
+            assertEquals(0, y.wiring().expandedBytes());
+        }
+        Rotor x = libraries[2].get("X");
+        assertNull(x.wiring().forwardTable());
+        assertEquals(0, libraries[2].expandedBytes());
+        x.set(1);
+        assertEquals(abc.toInt('B'), x.convertForward(abc.toInt('A')));
+    }
+}
@@ -0,0 +1,259 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** The fixed part of a rotor: its name, its permutation and its notches,
+ *  with the tables derived from them.  A RotorWiring never changes once
+ *  made, so any number of rotors, on any number of threads, may share
+ *  one; each Rotor holds only its own setting and ring.
+ *
+ *  For small alphabets, a RotorWiring may also expand its permutation,
+ *  on first use, into tables of where a rotor at each setting sends each
+ *  contact, so that converting needs no modular arithmetic.  These
+ *  take 4 * size * size bytes and are made only for alphabets of at most
+ *  MAX_EXPANDED_SIZE characters, and only while the Budget the wiring
+ *  was made with has room for them.  Wirings made together, such as
+ *  those of one RotorLibrary, share a Budget, which is reclaimed with
+ *  them; a Budget of 0 bytes turns expansion off.
+ *  @author Brian Chiang
+ */
+final class RotorWiring {
+
+    /** The wiring of a rotor named NAME whose permutation at its 0
+     *  setting is PERM, with notches at the characters of NOTCHES, whose
+     *  expanded tables are limited only by MAX_EXPANDED_SIZE. */
+    RotorWiring(String name, Permutation perm, String notches) {
+        this(name, perm, notches, new Budget(MAX_EXPANDED_BYTES));
+    }
+
+    /** The wiring of a rotor named NAME whose permutation at its 0
+     *  setting is PERM, with notches at the characters of NOTCHES, whose
+     *  expanded tables are charged to BUDGET. */
+    RotorWiring(String name, Permutation perm, String notches,
+                Budget budget) {
+        int size = perm.size();
+        boolean[] notchAt = new boolean[size];
+        for (char b : notches.toCharArray()) {
+            int k = perm.alphabet().toInt(b);
+            if (k == Alphabet.NOT_FOUND) {
+                throw error("Char %s is not found in alphabet", b);
+            }
+            notchAt[k] = true;
+        }
+        int[] notchCount = new int[size + 1];
+        boolean adjacent = false;
+        for (int i = 0; i < size; i++) {
+            notchCount[i + 1] = notchCount[i] + (notchAt[i] ? 1 : 0);
+            if (notchAt[i] && notchAt[(i + 1) % size]) {
+                adjacent = true;
+            }
+        }
+        int[] toNotch = new int[size];
+        int next = Integer.MAX_VALUE;
+        for (int i = 2 * size - 1; i >= 0; i--) {
+            if (notchAt[i % size]) {
+                next = i;
+            }
+            if (i < size) {
+                toNotch[i] = next == Integer.MAX_VALUE ? next : next - i;
+            }
+        }
+        _name = name;
+        _size = size;
+        _permutation = perm;
+        _notches = notches;
+        _notchAt = notchAt;
+        _notchCount = notchCount;
+        _adjacentNotches = adjacent;
+        _toNotch = toNotch;
+        _budget = budget;
+    }
+
+    /** Return the name of my rotor. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return my permutation at the 0 setting. */
+    Permutation permutation() {
+        return _permutation;
+    }
+
+    /** Return the characters at which I have notches. */
+    String notches() {
+        return _notches;
+    }
+
+    /** Return true iff I have a notch at index K of my alphabet. */
+    boolean notchAt(int k) {
+        return _notchAt[k];
+    }
+
+    /** Return the number of my notches at indices less than K, where
+     *  0 <= K <= the size of my alphabet. */
+    int notchesBelow(int k) {
+        return _notchCount[k];
+    }
+
+    /** Return the number of steps from index K of my alphabet to the
+     *  nearest notch at or after it, wrapping around, or
+     *  Integer.MAX_VALUE if I have no notches. */
+    int toNotch(int k) {
+        return _toNotch[k];
+    }
+
+    /** Return true iff some two of my notches are adjacent. */
+    boolean adjacentNotches() {
+        return _adjacentNotches;
+    }
+
+    /** Return the table whose entry S * size() + P is where my rotor at
+     *  setting S sends contact P going forward, or null if I have no
+     *  expanded tables. */
+    char[] forwardTable() {
+        return tables()._forward;
+    }
+
+    /** Return the table whose entry S * size() + P is where my rotor at
+     *  setting S sends contact P going backward, or null if I have no
+     *  expanded tables. */
+    char[] backwardTable() {
+        return tables()._backward;
+    }
+
+    /** Return the size in bytes of my expanded tables, or 0 if I have
+     *  none (yet). */
+    long expandedBytes() {
+        Tables tables = _tables;
+        return tables == null || tables._forward == null ? 0
+            : 2L * tables._forward.length * Character.BYTES;
+    }
+
+    /** Return my expanded tables, making them if this is the first
+     *  call. */
+    private Tables tables() {
+        Tables tables = _tables;
+        if (tables == null) {
+            tables = expand();
+        }
+        return tables;
+    }
+
+    /** Make _tables, if another thread has not, and return them; they
+     *  are empty if my alphabet is too large or my budget is spent. */
+    private synchronized Tables expand() {
+        if (_tables != null) {
+            return _tables;
+        }
+        long bytes = 2L * _size * _size * Character.BYTES;
+        if (_size > MAX_EXPANDED_SIZE || !_budget.charge(bytes)) {
+            _tables = new Tables(null, null);
+            return _tables;
+        }
+        char[] forward = new char[_size * _size];
+        char[] backward = new char[_size * _size];
+        for (int s = 0; s < _size; s++) {
+            for (int p = 0; p < _size; p++) {
+                int contact = _permutation.wrap(p + s);
+                forward[s * _size + p] = (char)
+                    _permutation.wrap(_permutation.permute(contact) - s);
+                backward[s * _size + p] = (char)
+                    _permutation.wrap(_permutation.invert(contact) - s);
+            }
+        }
+        _tables = new Tables(forward, backward);
+        return _tables;
+    }
+
+    /** A limit on the bytes of expanded tables made by the wirings
+     *  that share it.  It may be charged from any thread. */
+    static final class Budget {
+
+        /** A budget of LIMIT bytes. */
+        Budget(long limit) {
+            _limit = limit;
+            _used = new AtomicLong();
+        }
+
+        /** Return the bytes charged so far. */
+        long used() {
+            return _used.get();
+        }
+
+        /** Charge BYTES to me and return true if that stays within my
+         *  limit; otherwise, charge nothing and return false. */
+        boolean charge(long bytes) {
+            long used;
+            do {
+                used = _used.get();
+                if (used + bytes > _limit) {
+                    return false;
+                }
+            } while (!_used.compareAndSet(used, used + bytes));
+            return true;
+        }
+
+        /** Most bytes that may be charged. */
+        private final long _limit;
+
+        /** Bytes charged so far. */
+        private final AtomicLong _used;
+    }
+
+    /** The expanded tables of a wiring. */
+    private static final class Tables {
+
+        /** Tables FORWARD and BACKWARD, or nulls for none. */
+        Tables(char[] forward, char[] backward) {
+            _forward = forward;
+            _backward = backward;
+        }
+
+        /** Forward and backward mappings at each setting. */
+        private final char[] _forward, _backward;
+    }
+
+    /** Largest alphabet for which tables are expanded. */
+    static final int MAX_EXPANDED_SIZE = 256;
+
+    /** Default limit of a Budget: the most bytes taken by the expanded
+     *  tables of the wirings of one library. */
+    static final long MAX_EXPANDED_BYTES = 1L << 26;
+
+    /** Name of my rotor. */
+    private final String _name;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Permutation at the 0 setting. */
+    private final Permutation _permutation;
+
+    /** Where notches are in the alphabet. */
+    private final String _notches;
+
+    /** True at the index of each notch character. */
+    private final boolean[] _notchAt;
+
+    /** Number of notches at indices less than each index. */
+    private final int[] _notchCount;
+
+    /** True iff some two of my notches are adjacent. */
+    private final boolean _adjacentNotches;
+
+    /** Steps from each index to the next notch. */
+    private final int[] _toNotch;
+
+    /** What my expanded tables are charged to. */
+    private final Budget _budget;
+
+    /** My expanded tables, or null until they are first needed. */
+    private volatile Tables _tables;
+}
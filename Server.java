@@ -0,0 +1,283 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running Enigma server.  It reads its configurations once and
+ *  then converts messages for any number of clients connected over a
+ *  local socket, each on its own thread with its own machines.
+ *
+ *  A client sends lines in the same form as Main's input: a settings
+ *  line beginning with '*' sets up the client's machine for the message
+ *  lines that follow, each of which is answered with its conversion in
+ *  groups of five.  A line "@NAME" switches to the configuration read
+ *  from the file NAME (without directory or extension); the first
+ *  configuration is used until then.  Settings and "@" lines get no
+ *  answer.  An error is answered with a line "Error: MESSAGE", after
+ *  which the client must send a new settings line.  Answers are flushed
+ *  whenever no further complete request is waiting.
+ *  @author Brian Chiang
+ */
+class Server {
+
+    /** A server for the configurations in the files named CONFIGS. */
+    Server(List<String> configs) {
+        _machines = new LinkedHashMap<>();
+        for (String name : configs) {
+            _machines.put(configName(name), Main.loadConfig(name));
+        }
+        if (_machines.isEmpty()) {
+            throw error("no configurations");
+        }
+    }
+
+    /** Return a channel listening at ADDRESS: a TCP port on the loopback
+     *  interface if ADDRESS is a number (0 for any free port), and
+     *  otherwise the path of a Unix-domain socket.  A socket left at that
+     *  path by an earlier server is replaced; any other file there is an
+     *  error. */
+    static ServerSocketChannel bind(String address) {
+        try {
+            ServerSocketChannel channel;
+            SocketAddress local;
+            if (address.matches("\\d+")) {
+                channel = ServerSocketChannel.open();
+                local = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                              Integer.parseInt(address));
+            } else {
+                Path path = Paths.get(address);
+                removeStaleSocket(path);
+                channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                local = UnixDomainSocketAddress.of(path);
+            }
+            channel.bind(local);
+            return channel;
+        } catch (IOException | NumberFormatException excp) {
+            throw error("could not listen at %s", address);
+        }
+    }
+
+    /** Delete PATH if it is a socket left behind by an earlier server, so
+     *  that it can be bound again: one that nothing is listening on.
+     *  Anything else at PATH, such as a regular file, a device, or the
+     *  socket of a live server, is left alone and reported as an
+     *  address in use. */
+    private static void removeStaleSocket(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        if (!isSocket(path)) {
+            throw error("could not listen at %s: address in use", path);
+        }
+        try (SocketChannel probe =
+                 SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+            throw error("could not listen at %s: address in use", path);
+        } catch (ConnectException excp) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /** Return true iff PATH, not following links, is a socket.  Where
+     *  the file system does not report Unix modes, nothing is known to
+     *  be a socket. */
+    private static boolean isSocket(Path path) throws IOException {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode",
+                                                    LinkOption.NOFOLLOW_LINKS);
+            return (mode & S_IFMT) == S_IFSOCK;
+        } catch (UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Accept connections on LISTENER until it is closed, serving each on
+     *  a thread of its own: a virtual thread where the platform has
+     *  them. */
+    void serve(ServerSocketChannel listener) {
+        ExecutorService threads = connectionThreads();
+        try {
+            while (true) {
+                SocketChannel client = listener.accept();
+                threads.execute(() -> handle(client));
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            throw error("could not accept connection: %s",
+                        excp.getMessage());
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    /** Converse with CLIENT until it closes its connection. */
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            converse(new InputStreamReader(Channels.newInputStream(channel),
+                                           StandardCharsets.UTF_8),
+                     Channels.newOutputStream(channel));
+        } catch (IOException | EnigmaException excp) {
+            if (Main.verbose()) {
+                System.err.printf("Connection closed: %s%n",
+                                  excp.getMessage());
+            }
+        }
+    }
+
+    /** Answer the requests read from IN on OUT, as described in the class
+     *  comment, until IN is exhausted. */
+    void converse(Reader in, OutputStream out) {
+        LineReader input = new LineReader(in, LINE_SIZE);
+        GroupWriter output = new GroupWriter(out, StandardCharsets.UTF_8);
+        LinkedHashMap<String, Machine> machines = new LinkedHashMap<>();
+        String current = _machines.keySet().iterator().next();
+        Machine machine = null;
+        StringBuilder control = null;
+        boolean ready = false, skip = false, partial = false;
+        while (input.next()) {
+            char[] buffer = input.buffer();
+            int start = input.start(), len = input.length();
+            try {
+                if (input.lineStart()) {
+                    skip = false;
+                    if (len > 0
+                        && (buffer[start] == '*' || buffer[start] == '@')) {
+                        control = new StringBuilder();
+                    } else if (!ready && (len > 0 || !input.lineEnd())) {
+                        throw error("input must have a setting line");
+                    }
+                }
+                if (skip) {
+                    continue;
+                }
+                if (control != null) {
+                    control.append(buffer, start, len);
+                    if (input.lineEnd()) {
+                        String line = control.toString();
+                        control = null;
+                        ready = false;
+                        if (line.charAt(0) == '@') {
+                            String name = line.substring(1).trim();
+                            if (!_machines.containsKey(name)) {
+                                throw error("no configuration %s", name);
+                            }
+                            current = name;
+                        } else {
+                            machine = machines.computeIfAbsent(
+                                current, k -> _machines.get(k).replicate());
+                            setUp(machine, line);
+                            ready = true;
+                        }
+                    }
+                    continue;
+                }
+                if (ready) {
+                    machine.convert(buffer, start, len, output);
+                } else {
+                    Alphabet alphabet = _machines.get(current).alphabet();
+                    for (int i = start; i < start + len; i++) {
+                        char c = buffer[i];
+                        if (!alphabet.contains(c)
+                            && !Character.isWhitespace(c)) {
+                            throw error("%s is not valid", c);
+                        }
+                    }
+                    output.write(buffer, start, len);
+                }
+                partial = !input.lineEnd();
+                if (input.lineEnd()) {
+                    output.endLine();
+                }
+            } catch (EnigmaException excp) {
+                if (partial) {
+                    output.endLine();
+                    partial = false;
+                }
+                output.writeText("Error: " + excp.getMessage());
+                output.endLine();
+                ready = false;
+                control = null;
+                skip = !input.lineEnd();
+            } finally {
+                if (input.lineEnd() && !input.ready()) {
+                    output.flush();
+                }
+            }
+        }
+        output.flush();
+    }
+
+    /** Set M according to the settings line SETTINGS as Main.setUp
+     *  does, reporting any malformed line as an EnigmaException. */
+    private static void setUp(Machine m, String settings) {
+        try {
+            Main.setUp(m, settings);
+        } catch (IndexOutOfBoundsException excp) {
+            throw error("malformed settings line");
+        }
+    }
+
+    /** Return the name by which clients select the configuration in the
+     *  file named FILE: its last component without any extension. */
+    static String configName(String file) {
+        String name = Paths.get(file).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /** Return an executor that runs each task on a new virtual thread if
+     *  this platform has them, and otherwise on a cached pool of daemon
+     *  threads. */
+    private static ExecutorService connectionThreads() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "enigma-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Size of each connection's input buffer. */
+    static final int LINE_SIZE = 1 << 13;
+
+    /** The file-type bits of a Unix mode, and their value for a
+     *  socket. */
+    private static final int S_IFMT = 0170000, S_IFSOCK = 0140000;
+
+    /** The machine read from each configuration, by name, in the order
+     *  given.  These are never set up; each connection works on its own
+     *  replicas. */
+    private final LinkedHashMap<String, Machine> _machines;
+}
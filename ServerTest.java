@@ -0,0 +1,219 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+import static org.junit.Assume.assumeTrue;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Brian Chiang
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConverse() throws IOException {
+        Path config = config("naval");
+        try {
+            Server server = new Server(Arrays.asList(config.toString()));
+            String answer = converse(server,
+                "\n* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+                + "FROM HIS SHOULDER HIAWATHA\n"
+                + "Q7\n"
+                + "FROM HIS\n"
+                + "@naval\n"
+                + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\r\n"
+                + "FROM HIS SHOULDER HIAWATHA\r\n"
+                + "@army\n");
+            assertEquals("\n"
+                         + "QVPQS OKOIL PUBKJ ZPISF XDW\n"
+                         + "Error: 7 is not valid\n"
+                         + "Error: input must have a setting line\n"
+                         + "QVPQS OKOIL PUBKJ ZPISF XDW\n"
+                         + "Error: no configuration army\n",
+                         answer.replace(System.lineSeparator(), "\n"));
+        } finally {
+            delete(config);
+        }
+    }
+
+    @Test
+    public void checkMalformedSettings() throws IOException {
+        Path config = config("naval");
+        try {
+            Server server = new Server(Arrays.asList(config.toString()));
+            String answer = converse(server,
+                "* B Beta III IV I AXLE ( \n"
+                + "* B Beta III IV I AXLE\n"
+                + "AAAAA\n");
+            String[] lines = answer.split(System.lineSeparator());
+            assertEquals(2, lines.length);
+            assertTrue(lines[0].startsWith("Error: "));
+            assertTrue(lines[1].matches("[A-Z]{5}"));
+        } finally {
+            delete(config);
+        }
+    }
+
+    @Test
+    public void checkSocket() throws Exception {
+        Path config = config("naval");
+        ServerSocketChannel listener = Server.bind("0");
+        try {
+            Server server = new Server(Arrays.asList(config.toString()));
+            Thread serving = new Thread(() -> server.serve(listener));
+            serving.start();
+            int port =
+                ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            for (int k = 0; k < 2; k++) {
+                try (Socket socket = new Socket("localhost", port)) {
+                    OutputStream out = socket.getOutputStream();
+                    BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(),
+                                              StandardCharsets.UTF_8));
+                    out.write(("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) "
+                               + "(BY)\nFROM HIS SHOULDER HIAWATHA\n")
+                              .getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW",
+                                 in.readLine());
+                }
+            }
+            listener.close();
+            serving.join();
+        } finally {
+            listener.close();
+            delete(config);
+        }
+    }
+
+    @Test
+    public void checkBindKeepsFile() throws IOException {
+        Path config = config("naval");
+        try {
+            Server.bind(config.toString());
+            fail("bound over a regular file");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("address in use"));
+        } finally {
+            assertEquals(STANDARD_CONFIG, new String(Files.readAllBytes(config),
+                                            StandardCharsets.UTF_8));
+            delete(config);
+        }
+    }
+
+    @Test
+    public void checkBindReplacesSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        try {
+            Server.bind(socket.toString()).close();
+            assertTrue(Files.exists(socket, LinkOption.NOFOLLOW_LINKS));
+            Server.bind(socket.toString()).close();
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkBindKeepsLiveSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        try (ServerSocketChannel live = Server.bind(socket.toString())) {
+            try {
+                Server.bind(socket.toString()).close();
+                fail("bound over a live server");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("address in use"));
+            }
+            try (SocketChannel client = SocketChannel.open(
+                     UnixDomainSocketAddress.of(socket))) {
+                assertTrue(client.isConnected());
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkBindKeepsFifo() throws Exception {
+        Path dir = Files.createTempDirectory("enigma");
+        Path fifo = dir.resolve("enigma.fifo");
+        try {
+            Process mkfifo;
+            try {
+                mkfifo = new ProcessBuilder("mkfifo", fifo.toString())
+                    .start();
+            } catch (IOException excp) {
+                mkfifo = null;
+            }
+            assumeTrue(mkfifo != null && mkfifo.waitFor() == 0);
+            try {
+                Server.bind(fifo.toString()).close();
+                fail("bound over a FIFO");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("address in use"));
+            }
+            assertTrue(Files.exists(fifo, LinkOption.NOFOLLOW_LINKS));
+        } finally {
+            Files.deleteIfExists(fifo);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkConfigName() {
+        assertEquals("naval", Server.configName("/a/b/naval.conf"));
+        assertEquals("army", Server.configName("army"));
+    }
+
+    /* ***** HELPERS ***** */
+
+    /** Return the answer of SERVER to the requests REQUESTS. */
+    private static String converse(Server server, String requests) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        server.converse(new StringReader(requests), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Return a new file NAME.conf in a new temporary directory, holding
+     *  the standard configuration. */
+    private static Path config(String name) throws IOException {
+        Path file = Files.createTempDirectory("enigma").resolve(name + ".conf");
+        Files.write(file, STANDARD_CONFIG.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /** Delete CONFIG and its directory. */
+    private static void delete(Path config) throws IOException {
+        Files.delete(config);
+        Files.delete(config.getParent());
+    }
+}
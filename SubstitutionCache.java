@@ -0,0 +1,224 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A memo of the complete substitution performed by a Machine (plugboard,
+ *  rotors, reflector, rotors and plugboard again) at each position of its
+ *  rotating rotors.  A position is identified by a key formed from the
+ *  settings of the rotating rotors.  Small machines keep a flat table
+ *  with a row for every reachable position, allocated PAGE_ROWS rows at a
+ *  time as positions are first reached, so that a machine pays only for
+ *  the positions it uses; larger ones keep rows for a bounded number of
+ *  recently used positions.  Rows are filled in as characters are
+ *  converted, and the whole memo is discarded in constant time by
+ *  clear().
+ *  @author Brian Chiang
+ */
+class SubstitutionCache {
+
+    /** A memo for an alphabet of SIZE characters and POSITIONS distinct
+     *  rotor positions.  Uses a flat table if it would hold no more than
+     *  MAX_FLAT_ENTRIES entries, and otherwise at most MAX_ROWS rows. */
+    SubstitutionCache(int size, long positions) {
+        _size = size;
+        _positions = positions;
+        if (size <= Byte.MAX_VALUE && positions <= MAX_FLAT_ENTRIES / size) {
+            int pages = (int) ((positions + PAGE_ROWS - 1) / PAGE_ROWS);
+            _pages = new byte[pages][];
+            _stamps = new int[pages];
+        } else {
+            _rows = new int[MAX_ROWS][];
+            _keys = new long[MAX_ROWS];
+            _stamps = new int[MAX_ROWS];
+            _newer = new int[MAX_ROWS];
+            _older = new int[MAX_ROWS];
+            _chain = new int[MAX_ROWS];
+            _buckets = new int[2 * MAX_ROWS];
+            Arrays.fill(_buckets, NONE);
+            _newest = _oldest = NONE;
+        }
+        _generation = 1;
+    }
+
+    /** Return the number of characters in the alphabet I cover. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of rotor positions I cover. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return true iff I hold a row for every position. */
+    boolean flat() {
+        return _pages != null;
+    }
+
+    /** Forget every recorded substitution. */
+    void clear() {
+        _generation += 1;
+    }
+
+    /** Return the result of converting C at the rotor position KEY,
+     *  asking M to substitute C at its current position if I have not
+     *  recorded it yet. */
+    int convert(long key, int c, Machine m) {
+        if (_pages != null) {
+            int k = (int) key;
+            int p = k / PAGE_ROWS;
+            byte[] page = _pages[p];
+            if (_stamps[p] != _generation) {
+                if (page == null) {
+                    page = new byte[PAGE_ROWS * _size];
+                    _pages[p] = page;
+                }
+                Arrays.fill(page, (byte) -1);
+                _stamps[p] = _generation;
+            }
+            int i = (k % PAGE_ROWS) * _size + c;
+            int r = page[i];
+            if (r < 0) {
+                r = m.substitute(c);
+                page[i] = (byte) r;
+            }
+            return r;
+        }
+        int[] row = row(key);
+        int r = row[c];
+        if (r < 0) {
+            r = m.substitute(c);
+            row[c] = r;
+        }
+        return r;
+    }
+
+    /** Return the row for position KEY, making it the most recently
+     *  used and evicting the least recently used row if there is no
+     *  room for a new one. */
+    private int[] row(long key) {
+        int b = bucket(key);
+        for (int e = _buckets[b]; e != NONE; e = _chain[e]) {
+            if (_keys[e] == key && _stamps[e] == _generation) {
+                if (e != _newest) {
+                    unlink(e);
+                    link(e);
+                }
+                return _rows[e];
+            }
+        }
+        int e;
+        if (_count < _rows.length) {
+            e = _count;
+            _count += 1;
+            _rows[e] = new int[_size];
+        } else {
+            e = _oldest;
+            unlink(e);
+            int ob = bucket(_keys[e]);
+            if (_buckets[ob] == e) {
+                _buckets[ob] = _chain[e];
+            } else {
+                int p = _buckets[ob];
+                while (_chain[p] != e) {
+                    p = _chain[p];
+                }
+                _chain[p] = _chain[e];
+            }
+        }
+        Arrays.fill(_rows[e], -1);
+        _keys[e] = key;
+        _stamps[e] = _generation;
+        _chain[e] = _buckets[b];
+        _buckets[b] = e;
+        link(e);
+        return _rows[e];
+    }
+
+    /** Make row E the most recently used. */
+    private void link(int e) {
+        _older[e] = _newest;
+        _newer[e] = NONE;
+        if (_newest != NONE) {
+            _newer[_newest] = e;
+        }
+        _newest = e;
+        if (_oldest == NONE) {
+            _oldest = e;
+        }
+    }
+
+    /** Remove row E from the recency list. */
+    private void unlink(int e) {
+        int newer = _newer[e], older = _older[e];
+        if (newer != NONE) {
+            _older[newer] = older;
+        } else {
+            _newest = older;
+        }
+        if (older != NONE) {
+            _newer[older] = newer;
+        } else {
+            _oldest = newer;
+        }
+    }
+
+    /** Return the hash bucket of KEY. */
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) * 0x9E3779B1 >>> 16)
+            & (_buckets.length - 1);
+    }
+
+    /** Largest number of entries in a flat table. */
+    static final long MAX_FLAT_ENTRIES = 1 << 24;
+
+    /** Number of rows of a flat table allocated at once. */
+    static final int PAGE_ROWS = 1 << 8;
+
+    /** Number of rows kept when the table is not flat. */
+    static final int MAX_ROWS = 1 << 12;
+
+    /** Marks the absence of a row. */
+    private static final int NONE = -1;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Number of rotor positions. */
+    private final long _positions;
+
+    /** Current generation; rows stamped with any other are empty. */
+    private int _generation;
+
+    /** The pages of the flat table, or null.  Page P, once allocated,
+     *  holds the rows of keys P * PAGE_ROWS up to PAGE_ROWS more, each of
+     *  _size entries indexed by character. */
+    private byte[][] _pages;
+
+    /** Generation of each flat page, or of each cached row. */
+    private int[] _stamps;
+
+    /** Cached rows, indexed by entry number. */
+    private int[][] _rows;
+
+    /** Key of each cached row. */
+    private long[] _keys;
+
+    /** Next more recently used entry of each entry. */
+    private int[] _newer;
+
+    /** Next less recently used entry of each entry. */
+    private int[] _older;
+
+    /** Next entry in the same hash bucket. */
+    private int[] _chain;
+
+    /** First entry in each hash bucket. */
+    private int[] _buckets;
+
+    /** Number of entries in use. */
+    private int _count;
+
+    /** The most and least recently used entries. */
+    private int _newest, _oldest;
+}
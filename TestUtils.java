@@ -1,6 +1,9 @@
 package enigma;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Scanner;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -11,6 +14,60 @@ class TestUtils {
     protected static final String UPPER_STRING =
         "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
 
+    /** A small alphabet for machines whose every setting can be
+     *  searched. */
+    static final Alphabet AH = new Alphabet("ABCDEFGH");
+
+    /** Return a machine over AH with 4 slots and 2 pawls, able to hold
+     *  a reflector, a fixed rotor, and any two of three moving rotors,
+     *  one of which has two notches. */
+    static Machine smallMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation("(AE)(BH)(CG)(DF)", AH)));
+        all.add(new FixedRotor("F", new Permutation("(ACEGBDFH)", AH)));
+        all.add(new MovingRotor("M1", new Permutation("(ABD)(CHFE)", AH),
+                                "C"));
+        all.add(new MovingRotor("M2", new Permutation("(AGCB)(DEH)", AH),
+                                "BF"));
+        all.add(new MovingRotor("M3", new Permutation("(AHBGDC)(EF)", AH),
+                                "H"));
+        return new Machine(AH, 4, 2, all);
+    }
+
+    /** A configuration of naval rotors with every kind of rotor,
+     *  including one, V, with adjacent notches. */
+    static final String STANDARD_CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " V MKL     (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + " VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " Gamma N   (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Settings lines for STANDARD_CONFIG.  Those without rings or
+     *  plugboard keep the ones set before.  The last cannot be sought
+     *  without stepping. */
+    static final String[] STANDARD_SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* B Gamma II IV I QZEA BCDE (AB)",
+        "* B Beta I III II ZZZZ",
+        "* B Beta I II III AAAA",
+        "* B Gamma VI II IV QZEA BCDE (AB)",
+        "* B Gamma I V III AKJA",
+    };
+
+    /** Return a new machine for STANDARD_CONFIG, with no rotors
+     *  inserted. */
+    static Machine standardMachine() {
+        return Main.readConfig(new Scanner(new StringReader(STANDARD_CONFIG)));
+    }
+
     /** Return an identifying error message for failed assertions.
      *  TESTID identifies the test, MSGFORMAT and ARGS provide
      *  the details, as for String.format. */
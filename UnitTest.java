@@ -16,7 +16,21 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                AlphabetTest.class,
+                LineReaderTest.class,
+                GroupWriterTest.class,
+                MappedFileReaderTest.class,
+                ServerTest.class,
+                ConfigSnapshotTest.class,
+                RotorLibraryTest.class,
+                MachineFactoryTest.class,
+                PeriodAnalysisTest.class,
+                CribSearchTest.class,
+                NgramTableTest.class,
+                CiphertextAttackTest.class,
+                BlockConverterTest.class,
+                PipelineTest.class));
     }
 
 }
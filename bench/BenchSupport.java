@@ -0,0 +1,151 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Deterministic alphabets, rotors and messages shared by the benchmarks.
+ *  @author Brian Chiang
+ */
+final class BenchSupport {
+
+    /** Not instantiable. */
+    private BenchSupport() {
+    }
+
+    /** Return an alphabet of SIZE characters: the upper-case letters
+     *  first, then other printable characters. */
+    static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 'A'; c <= 'Z' && chars.length() < size; c++) {
+            chars.append(c);
+        }
+        for (char c = '!'; chars.length() < size; c++) {
+            if (c != '*' && c != '(' && c != ')'
+                && !Character.isWhitespace(c)
+                && !(c >= 'A' && c <= 'Z')) {
+                chars.append(c);
+            }
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return the cycles of a random permutation of ALPHA chosen by
+     *  RANDOM. */
+    static String cycles(Alphabet alpha, Random random) {
+        List<Character> chars = shuffled(alpha, random);
+        StringBuilder cycles = new StringBuilder("(");
+        for (int i = 0; i < chars.size(); i++) {
+            if (i > 0 && random.nextInt(4) == 0) {
+                cycles.append(") (");
+            }
+            cycles.append(chars.get(i));
+        }
+        return cycles.append(")").toString();
+    }
+
+    /** Return the cycles of a random derangement of ALPHA chosen by
+     *  RANDOM, made of 2-cycles and, if the size of ALPHA is odd, one
+     *  3-cycle. */
+    static String reflector(Alphabet alpha, Random random) {
+        List<Character> chars = shuffled(alpha, random);
+        StringBuilder cycles = new StringBuilder();
+        int i = 0;
+        if (chars.size() % 2 == 1) {
+            cycles.append("(").append(chars.get(0)).append(chars.get(1))
+                .append(chars.get(2)).append(")");
+            i = 3;
+        }
+        for (; i < chars.size(); i += 2) {
+            cycles.append("(").append(chars.get(i)).append(chars.get(i + 1))
+                .append(")");
+        }
+        return cycles.toString();
+    }
+
+    /** Return the names of the rotors of a machine with SLOTS slots, as
+     *  made by rotors: a reflector, a fixed rotor and SLOTS-2 moving
+     *  rotors. */
+    static String[] names(int slots) {
+        String[] names = new String[slots];
+        names[0] = "R";
+        names[1] = "F";
+        for (int i = 2; i < slots; i++) {
+            names[i] = "M" + i;
+        }
+        return names;
+    }
+
+    /** Return the rotors named by names(SLOTS), with random wirings over
+     *  ALPHA and one or two notches each, chosen by RANDOM. */
+    static List<Rotor> rotors(Alphabet alpha, int slots, Random random) {
+        List<Rotor> rotors = new ArrayList<>();
+        String[] names = names(slots);
+        rotors.add(new Reflector(names[0],
+                new Permutation(reflector(alpha, random), alpha)));
+        rotors.add(new FixedRotor(names[1],
+                new Permutation(cycles(alpha, random), alpha)));
+        for (int i = 2; i < slots; i++) {
+            String notches = "" + alpha.toChar(random.nextInt(alpha.size()));
+            if (random.nextBoolean()) {
+                notches += alpha.toChar((alpha.toInt(notches.charAt(0))
+                                         + alpha.size() / 2) % alpha.size());
+            }
+            rotors.add(new MovingRotor(names[i],
+                    new Permutation(cycles(alpha, random), alpha), notches));
+        }
+        return rotors;
+    }
+
+    /** Return a machine with SLOTS slots over ALPHA holding the rotors of
+     *  rotors(ALPHA, SLOTS, RANDOM), set to random settings. */
+    static Machine machine(Alphabet alpha, int slots, Random random) {
+        Machine mach =
+            new Machine(alpha, slots, slots - 2, rotors(alpha, slots, random));
+        mach.insertRotors(names(slots));
+        mach.setRotors(setting(alpha, slots, random));
+        return mach;
+    }
+
+    /** Return a random rotor setting string for a machine over ALPHA
+     *  with SLOTS slots, chosen by RANDOM. */
+    static String setting(Alphabet alpha, int slots, Random random) {
+        return message(alpha, slots - 1, random);
+    }
+
+    /** Return a random message of LEN characters of ALPHA, chosen by
+     *  RANDOM. */
+    static String message(Alphabet alpha, int len, Random random) {
+        char[] msg = new char[len];
+        for (int i = 0; i < len; i++) {
+            msg[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(msg);
+    }
+
+    /** Return LEN random character indices of ALPHA, chosen by RANDOM. */
+    static int[] indices(Alphabet alpha, int len, Random random) {
+        int[] result = new int[len];
+        for (int i = 0; i < len; i++) {
+            result[i] = random.nextInt(alpha.size());
+        }
+        return result;
+    }
+
+    /** Return the characters of ALPHA in an order chosen by RANDOM. */
+    private static List<Character> shuffled(Alphabet alpha, Random random) {
+        List<Character> chars = new ArrayList<>();
+        for (int i = 0; i < alpha.size(); i++) {
+            chars.add(alpha.toChar(i));
+        }
+        Collections.shuffle(chars, random);
+        return chars;
+    }
+
+    /** Seed for all benchmark data. */
+    static final long SEED = 61;
+
+    /** Number of characters converted per benchmark invocation. */
+    static final int BATCH = 1024;
+}
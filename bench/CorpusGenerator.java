@@ -0,0 +1,176 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Generates configuration and input files for end-to-end benchmarks of
+ *  Main.  The same seed always gives the same files.
+ *  @author Brian Chiang
+ */
+final class CorpusGenerator {
+
+    /** A generator of machines over an alphabet of ALPHABETSIZE
+     *  characters with SLOTS rotor slots, whose choices are made by a
+     *  Random seeded with SEED. */
+    CorpusGenerator(long seed, int alphabetSize, int slots) {
+        if (slots < 3) {
+            throw new IllegalArgumentException("need at least 3 slots");
+        }
+        _random = new Random(seed);
+        _alphabet = BenchSupport.alphabet(alphabetSize);
+        _slots = slots;
+    }
+
+    /** Write a configuration to CONFIG: two reflectors, two fixed rotors
+     *  and EXTRA more moving rotors than there are pawls. */
+    void writeConfig(Path config, int extra) throws IOException {
+        StringBuilder alpha = new StringBuilder();
+        for (int i = 0; i < _alphabet.size(); i++) {
+            alpha.append(_alphabet.toChar(i));
+        }
+        _moving = _slots - 2 + extra;
+        try (Writer out = writer(config)) {
+            out.write(alpha + "\n");
+            out.write(" " + _slots + " " + (_slots - 2) + "\n");
+            for (int i = 0; i < 2; i++) {
+                out.write(" R" + i + " R " + spaced(
+                        BenchSupport.reflector(_alphabet, _random)) + "\n");
+            }
+            for (int i = 0; i < 2; i++) {
+                out.write(" F" + i + " N " + spaced(
+                        BenchSupport.cycles(_alphabet, _random)) + "\n");
+            }
+            for (int i = 0; i < _moving; i++) {
+                out.write(" M" + i + " M" + randomChar() + randomChar() + " "
+                          + spaced(BenchSupport.cycles(_alphabet, _random))
+                          + "\n");
+            }
+        }
+    }
+
+    /** Write BLOCKS settings blocks to INPUT, each followed by up to
+     *  MAXLINES message lines of up to MAXLENGTH characters, and return
+     *  the number of message characters written.  writeConfig must have
+     *  been called first. */
+    long writeInput(Path input, int blocks, int maxLines, int maxLength)
+        throws IOException {
+        long chars = 0;
+        try (Writer out = writer(input)) {
+            for (int b = 0; b < blocks; b++) {
+                out.write(settings() + "\n");
+                int lines = _random.nextInt(maxLines + 1);
+                for (int i = 0; i < lines; i++) {
+                    String line = messageLine(lineLength(maxLength));
+                    chars += line.length();
+                    out.write(line + "\n");
+                }
+            }
+        }
+        return chars;
+    }
+
+    /** Return a random settings line for the configuration written by
+     *  writeConfig, with a ring setting half the time and a plugboard of
+     *  up to MAX_PLUGS pairs. */
+    private String settings() {
+        StringBuilder line = new StringBuilder("*");
+        line.append(" R").append(_random.nextInt(2));
+        line.append(" F").append(_random.nextInt(2));
+        List<Integer> moving = new ArrayList<>();
+        for (int i = 0; i < _moving; i++) {
+            moving.add(i);
+        }
+        Collections.shuffle(moving, _random);
+        for (int i = 0; i < _slots - 2; i++) {
+            line.append(" M").append(moving.get(i));
+        }
+        line.append(" ")
+            .append(BenchSupport.setting(_alphabet, _slots, _random));
+        if (_random.nextBoolean()) {
+            line.append(" ")
+                .append(BenchSupport.setting(_alphabet, _slots, _random));
+        }
+        List<Character> plugs = new ArrayList<>();
+        for (int i = 0; i < _alphabet.size(); i++) {
+            plugs.add(_alphabet.toChar(i));
+        }
+        Collections.shuffle(plugs, _random);
+        int pairs = _random.nextInt(Math.min(MAX_PLUGS, plugs.size() / 2) + 1);
+        for (int i = 0; i < pairs; i++) {
+            line.append(" (").append(plugs.get(2 * i))
+                .append(plugs.get(2 * i + 1)).append(")");
+        }
+        return line.toString();
+    }
+
+    /** Return a random line length of at most MAXLENGTH: mostly short,
+     *  sometimes medium and occasionally up to MAXLENGTH. */
+    private int lineLength(int maxLength) {
+        int kind = _random.nextInt(20);
+        int bound;
+        if (kind == 0) {
+            bound = maxLength;
+        } else if (kind < 6) {
+            bound = Math.min(maxLength, MEDIUM_LINE);
+        } else {
+            bound = Math.min(maxLength, SHORT_LINE);
+        }
+        return _random.nextInt(bound + 1);
+    }
+
+    /** Return a message line of LEN characters, about one in SPACING of
+     *  them blanks. */
+    private String messageLine(int len) {
+        char[] line = new char[len];
+        for (int i = 0; i < len; i++) {
+            line[i] = _random.nextInt(SPACING) == 0 ? ' ' : randomChar();
+        }
+        return new String(line);
+    }
+
+    /** Return a random character of my alphabet. */
+    private char randomChar() {
+        return _alphabet.toChar(_random.nextInt(_alphabet.size()));
+    }
+
+    /** Return CYCLES with a blank between adjacent cycles. */
+    private static String spaced(String cycles) {
+        return cycles.replace(")(", ") (");
+    }
+
+    /** Return a buffered writer for the file PATH. */
+    private static Writer writer(Path path) throws IOException {
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    }
+
+    /** Bound on short line lengths. */
+    static final int SHORT_LINE = 80;
+
+    /** Bound on medium line lengths. */
+    static final int MEDIUM_LINE = 1000;
+
+    /** Most plugboard pairs on a settings line. */
+    static final int MAX_PLUGS = 10;
+
+    /** One in this many message characters is a blank. */
+    static final int SPACING = 6;
+
+    /** Source of all choices. */
+    private Random _random;
+
+    /** Alphabet of the machines. */
+    private Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private int _slots;
+
+    /** Number of moving rotors in the configuration. */
+    private int _moving;
+}
@@ -0,0 +1,102 @@
+package enigma;
+
+/** A histogram of latencies in the style of HdrHistogram: values are
+ *  counted in buckets whose width grows with their magnitude, so that
+ *  every recorded value is kept to within 1/SUB_BUCKETS of its true
+ *  value while the whole range of a long fits in a few thousand
+ *  counters.
+ *  @author Brian Chiang
+ */
+final class LatencyHistogram {
+
+    /** An empty histogram. */
+    LatencyHistogram() {
+        _counts = new long[(Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS];
+        _min = Long.MAX_VALUE;
+    }
+
+    /** Record one latency of VALUE nanoseconds, which must be
+     *  non-negative. */
+    void record(long value) {
+        _counts[index(value)] += 1;
+        _count += 1;
+        _total += value;
+        _min = Math.min(_min, value);
+        _max = Math.max(_max, value);
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the smallest value recorded, or 0 if none. */
+    long min() {
+        return _count == 0 ? 0 : _min;
+    }
+
+    /** Return the largest value recorded. */
+    long max() {
+        return _max;
+    }
+
+    /** Return the mean of the values recorded, or 0 if none. */
+    double mean() {
+        return _count == 0 ? 0 : (double) _total / _count;
+    }
+
+    /** Return the value at PERCENTILE (0 to 100) of those recorded: the
+     *  highest value of the bucket holding it, capped at max(). */
+    long percentile(double percentile) {
+        if (_count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * _count));
+        long seen = 0;
+        for (int i = 0; i < _counts.length; i++) {
+            seen += _counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), _max);
+            }
+        }
+        return _max;
+    }
+
+    /** Return the bucket of VALUE.  Values below SUB_BUCKETS have a
+     *  bucket each; above that, each power of two is divided into
+     *  SUB_BUCKETS buckets. */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift =
+            Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS - 1;
+        return (shift + 1) * SUB_BUCKETS
+            + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /** Return the highest value counted in bucket INDEX. */
+    private static long highest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long low = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    /** Log2 of the number of buckets per power of two. */
+    private static final int SUB_BITS = 8;
+
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Number of values in each bucket. */
+    private long[] _counts;
+
+    /** Number and sum of the values recorded. */
+    private long _count, _total;
+
+    /** Smallest and largest values recorded. */
+    private long _min, _max;
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Microbenchmarks of Machine: converting characters and messages, in ns
+ *  per character, and setting up a machine from a settings line, in ns
+ *  per setting.
+ *  @author Brian Chiang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "3", "5", "8" })
+    public int rotors;
+
+    /** Set up the machine and its inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchSupport.SEED);
+        _alphabet = BenchSupport.alphabet(alphabetSize);
+        _machine = BenchSupport.machine(_alphabet, rotors, random);
+        _names = BenchSupport.names(rotors);
+        _setting = BenchSupport.setting(_alphabet, rotors, random);
+        _rings = BenchSupport.setting(_alphabet, rotors, random);
+        _plugboard = new Permutation(
+                BenchSupport.reflector(BenchSupport.alphabet(2), random),
+                _alphabet);
+        _input = BenchSupport.indices(_alphabet, BenchSupport.BATCH, random);
+        _message = BenchSupport.message(_alphabet, MESSAGE, random);
+    }
+
+    /** Convert a batch of character indices. */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.BATCH)
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _input) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert a message. */
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE)
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Set up the machine as for a settings line with rotors, setting,
+     *  rings and plugboard. */
+    @Benchmark
+    public Machine setUpMachine() {
+        _machine.insertRotors(_names);
+        _machine.setRotors(_setting);
+        _machine.setRings(_rings);
+        _machine.setPlugboard(_plugboard);
+        return _machine;
+    }
+
+    /** Length of the converted message. */
+    static final int MESSAGE = 4096;
+
+    /** Alphabet of the machine. */
+    private Alphabet _alphabet;
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** Rotor names for setUpMachine. */
+    private String[] _names;
+
+    /** Rotor and ring settings for setUpMachine. */
+    private String _setting, _rings;
+
+    /** Plugboard for setUpMachine. */
+    private Permutation _plugboard;
+
+    /** Indices to convert. */
+    private int[] _input;
+
+    /** Message to convert. */
+    private String _message;
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Microbenchmarks of MachineFactory shared by all benchmark threads, in
+ *  ns per short message including getting a machine for it.  Run with
+ *  several thread counts (for example, "-t 1 -t 4 -t 16") to see how
+ *  the pool and thread-local paths scale against making a new machine
+ *  each time.
+ *  @author Brian Chiang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineFactoryBench {
+
+    /** Set up the factory and its inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchSupport.SEED);
+        Alphabet alpha = BenchSupport.alphabet(ALPHABET);
+        _factory = new MachineFactory(
+            new Machine(alpha, SLOTS, SLOTS - 2,
+                        BenchSupport.rotors(alpha, SLOTS, random)));
+        _settings = "* " + String.join(" ", BenchSupport.names(SLOTS))
+            + " " + BenchSupport.setting(alpha, SLOTS, random);
+        _message = BenchSupport.message(alpha, MESSAGE, random);
+    }
+
+    /** Convert the message on a pooled machine. */
+    @Benchmark
+    public String pooled() {
+        Machine m = _factory.acquire(_settings);
+        String result = m.convert(_message);
+        _factory.release(m);
+        return result;
+    }
+
+    /** Convert the message on the thread's own machine. */
+    @Benchmark
+    public String local() {
+        return _factory.local(_settings).convert(_message);
+    }
+
+    /** Convert the message on a new machine. */
+    @Benchmark
+    public String created() {
+        return _factory.create(_settings).convert(_message);
+    }
+
+    /** Size of the alphabet. */
+    static final int ALPHABET = 26;
+
+    /** Number of rotor slots. */
+    static final int SLOTS = 5;
+
+    /** Length of the message converted. */
+    static final int MESSAGE = 64;
+
+    /** The factory shared by all threads. */
+    private MachineFactory _factory;
+
+    /** The settings line for every message. */
+    private String _settings;
+
+    /** The message converted. */
+    private String _message;
+}
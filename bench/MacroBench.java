@@ -0,0 +1,113 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** End-to-end benchmark of Main: generates a deterministic configuration
+ *  and input with CorpusGenerator, runs Main over them repeatedly, and
+ *  reports throughput and the distribution of times spent on each
+ *  settings block.
+ *
+ *  Usage: java enigma.MacroBench [BLOCKS [ROUNDS [SEED [ALPHABET
+ *  [SLOTS]]]]]
+ *  @author Brian Chiang
+ */
+public final class MacroBench {
+
+    /** Run the benchmark as described by ARGS (see class comment). */
+    public static void main(String... args) throws IOException {
+        int blocks = arg(args, 0, DEFAULT_BLOCKS);
+        int rounds = arg(args, 1, DEFAULT_ROUNDS);
+        long seed = arg(args, 2, (int) BenchSupport.SEED);
+        int alphabet = arg(args, 3, DEFAULT_ALPHABET);
+        int slots = arg(args, 4, DEFAULT_SLOTS);
+
+        Path dir = Files.createTempDirectory("enigma-macro");
+        Path config = dir.resolve("bench.conf");
+        Path input = dir.resolve("bench.in");
+        Path output = dir.resolve("bench.out");
+        CorpusGenerator gen = new CorpusGenerator(seed, alphabet, slots);
+        gen.writeConfig(config, EXTRA_ROTORS);
+        long chars = gen.writeInput(input, blocks, MAX_LINES, MAX_LENGTH);
+        long bytes = Files.size(input);
+        System.out.printf("corpus: %d blocks, %d message chars, %.1f MB "
+                          + "in %s%n", blocks, chars, bytes / MB, dir);
+
+        for (int i = 0; i < rounds; i++) {
+            run(config, input, output, null);
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long elapsed = 0;
+        for (int i = 0; i < rounds; i++) {
+            elapsed += run(config, input, output, latency);
+        }
+
+        double seconds = elapsed / 1e9;
+        System.out.printf("throughput: %.1f MB/s, %.3g chars/s "
+                          + "(%d rounds, %.3f s)%n",
+                          rounds * bytes / MB / seconds,
+                          rounds * chars / seconds, rounds, seconds);
+        System.out.printf("block latency (us): n=%d mean=%.1f min=%.1f",
+                          latency.count(), latency.mean() / 1e3,
+                          latency.min() / 1e3);
+        for (double p : PERCENTILES) {
+            System.out.printf(" p%s=%.1f",
+                              String.valueOf(p).replaceAll("\\.0$", ""),
+                              latency.percentile(p) / 1e3);
+        }
+        System.out.printf(" max=%.1f%n", latency.max() / 1e3);
+
+        for (Path p : new Path[] { config, input, output, dir }) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    /** Run Main on the files CONFIG, INPUT and OUTPUT, recording the time
+     *  of each settings block in LATENCY if it is not null, and return
+     *  the elapsed time in nanoseconds. */
+    private static long run(Path config, Path input, Path output,
+                            LatencyHistogram latency) {
+        Main main = new Main(Arrays.asList(config.toString(),
+                                           input.toString(),
+                                           output.toString()),
+                             latency == null ? null : latency::record);
+        long start = System.nanoTime();
+        main.process();
+        return System.nanoTime() - start;
+    }
+
+    /** Return ARGS[K] as an int, or DFLT if there is no such argument. */
+    private static int arg(String[] args, int k, int dflt) {
+        return args.length > k ? Integer.parseInt(args[k]) : dflt;
+    }
+
+    /** Default number of settings blocks. */
+    static final int DEFAULT_BLOCKS = 2000;
+
+    /** Default number of warm-up and measured rounds. */
+    static final int DEFAULT_ROUNDS = 5;
+
+    /** Default alphabet size. */
+    static final int DEFAULT_ALPHABET = 26;
+
+    /** Default number of rotor slots. */
+    static final int DEFAULT_SLOTS = 5;
+
+    /** Moving rotors in the configuration beyond those in use. */
+    static final int EXTRA_ROTORS = 5;
+
+    /** Most message lines after a settings line. */
+    static final int MAX_LINES = 20;
+
+    /** Longest message line. */
+    static final int MAX_LENGTH = 100000;
+
+    /** Percentiles reported. */
+    static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    /** Bytes per megabyte. */
+    static final double MB = 1 << 20;
+}
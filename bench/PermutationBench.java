@@ -0,0 +1,71 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Microbenchmarks of Permutation.permute and invert, in ns per
+ *  character.
+ *  @author Brian Chiang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Set up the permutation and its inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchSupport.SEED);
+        Alphabet alpha = BenchSupport.alphabet(alphabetSize);
+        _perm = new Permutation(BenchSupport.cycles(alpha, random), alpha);
+        _input = BenchSupport.indices(alpha, BenchSupport.BATCH, random);
+    }
+
+    /** Permute a batch of indices. */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.BATCH)
+    public int permute() {
+        int sum = 0;
+        for (int c : _input) {
+            sum += _perm.permute(c);
+        }
+        return sum;
+    }
+
+    /** Invert a batch of indices. */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.BATCH)
+    public int invert() {
+        int sum = 0;
+        for (int c : _input) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** The permutation measured. */
+    private Permutation _perm;
+
+    /** Indices to convert. */
+    private int[] _input;
+}
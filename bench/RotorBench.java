@@ -0,0 +1,90 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Microbenchmarks of Rotor.convertForward and convertBackward and of
+ *  MovingRotor.atNotch and advance, in ns per character.
+ *  @author Brian Chiang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Set up the rotor and its inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchSupport.SEED);
+        Alphabet alpha = BenchSupport.alphabet(alphabetSize);
+        _rotor = new MovingRotor("M",
+                new Permutation(BenchSupport.cycles(alpha, random), alpha),
+                "" + alpha.toChar(0));
+        _rotor.set(random.nextInt(alphabetSize));
+        _input = BenchSupport.indices(alpha, BenchSupport.BATCH, random);
+    }
+
+    /** Convert a batch of indices forward. */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.BATCH)
+    public int convertForward() {
+        int sum = 0;
+        for (int c : _input) {
+            sum += _rotor.convertForward(c);
+        }
+        return sum;
+    }
+
+    /** Convert a batch of indices backward. */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.BATCH)
+    public int convertBackward() {
+        int sum = 0;
+        for (int c : _input) {
+            sum += _rotor.convertBackward(c);
+        }
+        return sum;
+    }
+
+    /** Advance the rotor a batch of times, checking its notch each
+     *  time. */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.BATCH)
+    public int advance() {
+        int notches = 0;
+        for (int i = 0; i < BenchSupport.BATCH; i++) {
+            if (_rotor.atNotch()) {
+                notches += 1;
+            }
+            _rotor.advance();
+            _rotor.set(false);
+        }
+        return notches;
+    }
+
+    /** The rotor measured. */
+    private Rotor _rotor;
+
+    /** Indices to convert. */
+    private int[] _input;
+}